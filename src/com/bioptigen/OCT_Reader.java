@@ -28,9 +28,14 @@ import java.awt.Label;
 import java.awt.Panel;
 import java.awt.TextField;
 import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 // Plugin 
 public class OCT_Reader implements PlugIn {
@@ -258,8 +263,94 @@ public class OCT_Reader implements PlugIn {
 
     } // run(...) 
 
+    /**
+     * Read just the frame count, line count and line length from the OCT file
+     * header without decoding any frames. Reading stops as soon as all three
+     * have been seen or when a key other than a header key turns up.
+     * @param octFile the file to scan
+     * @return {frameCount, lineCount, lineLength} (zero for any missing value)
+     * @throws IOException if the file can't be read
+     */
+    public int[] scanOctHeader(String octFile) throws IOException {
+        int frameCount      = 0; 
+        int lineCount       = 0; 
+        int lineLength      = 0; 
+        byte[] byteData     = new byte[32];
+        DataInputStream inputData = new DataInputStream(new BufferedInputStream(new FileInputStream(octFile)));
+        try
+        {
+                // Magic Number, Software Version, FRAMEHEADER key and its data length
+                inputData.readFully(byteData,0,6);
+                inputData.readFully(byteData,0,4); 
+                inputData.skipBytes(byteToInt(byteData) + 4);
+
+                while (frameCount == 0 || lineCount == 0 || lineLength == 0)
+                {
+                        inputData.readFully(byteData,0,4); 
+                        int keyLen 	= byteToInt(byteData);
+                        if (keyLen < 0 || keyLen > byteData.length) break;
+                        byteData 	= new byte[32]; 	// Clear array 
+                        inputData.readFully(byteData,0,keyLen);
+                        String key 	= new String(byteData).trim();
+                        if (!isHeaderKey(key)) break;
+
+                        inputData.readFully(byteData,0,4); 
+                        int dataLength 	= byteToInt(byteData);
+                        if (key.equals(strFrameCount) || key.equals(strLineCount) || key.equals(strLineLength))
+                        {
+                                inputData.readFully(byteData,0,4); 
+                                int value 	= byteToInt(byteData);
+                                inputData.skipBytes(dataLength - 4);
+                                if (key.equals(strFrameCount)) frameCount = value;
+                                else if (key.equals(strLineCount)) lineCount = value;
+                                else lineLength = value;
+                        }
+                        else
+                        {
+                                inputData.skipBytes(dataLength);
+                        }
+                }
+        }
+        catch (EOFException ex)
+        {
+                // report whatever we found before the header ran out
+        }
+        finally
+        {
+                inputData.close();
+        }
+        return new int[] {frameCount, lineCount, lineLength};
+    }
+
+    private static boolean isHeaderKey(String key) {
+        return key.equals(strFrameCount) || key.equals(strLineCount) || key.equals(strLineLength) ||
+               key.equals(strSampleFormat) || key.equals(strDescription) || key.equals(strXMin) ||
+               key.equals(strXMax) || key.equals(strXCaption) || key.equals(strYMin) ||
+               key.equals(strYMax) || key.equals(strYCaption) || key.equals(strScanType) ||
+               key.equals(strScanDepth) || key.equals(strScanLength) || key.equals(strAzScanLength) ||
+               key.equals(strElScanLength) || key.equals(strObjectDistance) || key.equals(strScanAngle) ||
+               key.equals(strFramesPerVolume) || key.equals(strScans) || key.equals(strFrames) ||
+               key.equals(strDopplerFlag) || key.equals(strConfig) || key.equals(strSubFrames) ||
+               key.equals(strSubFrameLines) || key.equals(strSubFrameOffsets) || key.equals(strSubFrameRadii);
+    }
+
 	// Load OCT file
     public ImagePlus loadOctFile(String octFile, String statusString, boolean show, boolean use8Bit) throws IOException {
+        return loadOctFile(octFile, statusString, show, use8Bit, false);
+    }
+
+    /**
+     * Load an OCT file as an intensity stack
+     * @param octFile the file to load
+     * @param statusString prefix for the ImageJ status messages
+     * @param show if true show the loaded stack
+     * @param use8Bit if true load an 8-bit stack (otherwise use 16 bit)
+     * @param skipDoppler if true seek over any DOPPLERSAMPLES blocks rather
+     *          than decoding them
+     * @return the intensity stack
+     * @throws IOException if the file can't be read
+     */
+    public ImagePlus loadOctFile(String octFile, String statusString, boolean show, boolean use8Bit, boolean skipDoppler) throws IOException {
         String currentSlice = "";
         String description  = ""; 
         String xCaption     = ""; 
@@ -298,9 +389,8 @@ public class OCT_Reader implements PlugIn {
         long fileSize    = 0; 
         int bufferSize  = 0; 
 
-        /* It should be possible to read data in as an array of pixels and then store those
-         * to the ip structure for ImageJ to display. This needs to be implemented to speed up 
-         * the reader. */
+        /* Frame samples are read in as a whole array of pixels below and stored straight
+         * into the rotated ip structure for ImageJ to display. */
         File octFileInformation     = new File(octFile);               // file variable for file information
         fileSize                    = octFileInformation.length();     // file size in bytes stored in a long 
         bufferSize                     = (int) fileSize;               // cast long to integer value
@@ -546,15 +636,19 @@ public class OCT_Reader implements PlugIn {
                 }
                 ImageProcessor ipIntensity = impIntensity.getProcessor();
 
-                // Initialize Doppler Data
+                // Initialize Doppler Data (not needed if we're skipping it)
                 ImageStack stackDoppler = new ImageStack(lineCount, lineLength);
-                ImagePlus impDoppler;
-                if(use8Bit) {
-                    impDoppler = NewImage.createByteImage("OCT Doppler Image", lineLength, lineCount, frameCount, NewImage.FILL_BLACK);
-                } else {
-                    impDoppler = NewImage.createShortImage("OCT Doppler Image", lineLength, lineCount, frameCount, NewImage.FILL_BLACK);
+                ImagePlus impDoppler = null;
+                ImageProcessor ipDoppler = null;
+                if (!skipDoppler)
+                {
+                    if(use8Bit) {
+                        impDoppler = NewImage.createByteImage("OCT Doppler Image", lineLength, lineCount, frameCount, NewImage.FILL_BLACK);
+                    } else {
+                        impDoppler = NewImage.createShortImage("OCT Doppler Image", lineLength, lineCount, frameCount, NewImage.FILL_BLACK);
+                    }
+                    ipDoppler = impDoppler.getProcessor(); 
                 }
-                ImageProcessor ipDoppler = impDoppler.getProcessor(); 
 
                 // frameDateTime information
                 short [] frameYear 			= new short[frameCount]; 
@@ -568,13 +662,17 @@ public class OCT_Reader implements PlugIn {
                 int [] frameDifference 		= new int[frameCount]; 
                 int frameDuration 			= 0;  	// time difference between frames in milliseconds
 
+                // Reusable buffers for decoding one frame of intensity samples
+                byte[] frameBytes                   = new byte[lineCount * lineLength * 2];
+                short[] frameSamples                = new short[lineCount * lineLength];
+
                 while (currentFrame <= frameCount)
                 {        	// lower value of frameCount for debugging purposes
                         IJ.showProgress(currentFrame,frameCount); 
                         IJ.showStatus(statusString + "Loading frame " + currentFrame + " of " + frameCount);
                         frameFlag 	= 0; 						// reset frameFlag for next frame read 
                         impIntensity.setSlice(currentFrame);
-                        impDoppler.setSlice(currentFrame);
+                        if (impDoppler != null) impDoppler.setSlice(currentFrame);
                         sliceCount 							= currentFrame - 1; 
                         currentSlice                        = Integer.toString(sliceCount);
 
@@ -645,25 +743,49 @@ public class OCT_Reader implements PlugIn {
                                                 byteData 	= new byte[32]; 	// Clear array 
                                                 inputData.read(byteData,0,4); 
                                                 dataLength 	= byteToInt(byteData);
-                                                /* The below may be better implemented by using ipIntensity.putRow() 
-                                                 * or ipIntensity.putColumn()--the only problem is that we're reading in a byte
-                                                 * array and the values need to be shorts. */
-                                                for (int j = 0; j < lineCount; j++)
+                                                /* Read the whole frame in one call and decode it as little-endian
+                                                 * shorts, then write each sample straight into the rotated slice.
+                                                 * Only the high byte of each sample is kept, matching the
+                                                 * byteToShort() decoding used by earlier versions of this reader. */
+                                                readFully(inputData, frameBytes);
+                                                ByteBuffer.wrap(frameBytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(frameSamples);
+                                                ImageProcessor ipRotated = ipIntensity.createProcessor(lineCount, lineLength);
+                                                if (use8Bit)
                                                 {
-                                                        for (int k = 0; k < lineLength; k++)
+                                                        byte[] rotatedPixels = (byte[]) ipRotated.getPixels();
+                                                        for (int j = 0; j < lineCount; j++)
                                                         {
-                                                                inputData.read(byteData, 0, 2);
-                                                                pixel               = byteToShort(byteData);
-                                                                ipIntensity.putPixel(k,j,pixel); 
-                                                        } // for k = ... lineLength
-                                                } // for j = ... lineCount 
-                                                stackIntensity.addSlice(currentSlice,ipIntensity.rotateLeft(),sliceCount);
+                                                                int rowOffset = j * lineLength;
+                                                                for (int k = 0; k < lineLength; k++)
+                                                                {
+                                                                        rotatedPixels[(lineLength - 1 - k) * lineCount + j] = (byte) (frameSamples[rowOffset + k] >>> 8);
+                                                                } // for k = ... lineLength
+                                                        } // for j = ... lineCount
+                                                }
+                                                else
+                                                {
+                                                        short[] rotatedPixels = (short[]) ipRotated.getPixels();
+                                                        for (int j = 0; j < lineCount; j++)
+                                                        {
+                                                                int rowOffset = j * lineLength;
+                                                                for (int k = 0; k < lineLength; k++)
+                                                                {
+                                                                        rotatedPixels[(lineLength - 1 - k) * lineCount + j] = (short) ((frameSamples[rowOffset + k] >>> 8) & 0xff);
+                                                                } // for k = ... lineLength
+                                                        } // for j = ... lineCount
+                                                }
+                                                stackIntensity.addSlice(currentSlice,ipRotated,sliceCount);
                                         } // if key.equals(strFrameSamples)
                                         else if (key.equals(strDopplerSamples)) 
                                         {
                                                 byteData 	= new byte[32]; 	// Clear array 
                                                 inputData.read(byteData,0,4); 
                                                 dataLength 	= byteToInt(byteData);
+                                                if (skipDoppler)
+                                                {
+                                                        skipFully(inputData, dataLength);
+                                                        continue;
+                                                }
                                                 inputData.skip(dataLength);	// read Doppler data 
                                                 for (int j = 0; j < lineCount; j++)
                                                 {
@@ -806,7 +928,7 @@ public class OCT_Reader implements PlugIn {
                         IJ.run("Size...", "width=" + lineCount + " height=" + lineCount + " interpolate"); 	// adjust SVP size to be square
                 }
 
-                if (dopplerFlag == 1)
+                if (dopplerFlag == 1 && !skipDoppler)
                 {
                         impDoppler.setSlice(0);                        
                         impDoppler.setStack("Oct Doppler Stack", stackDoppler);
@@ -850,6 +972,46 @@ public class OCT_Reader implements PlugIn {
         return( ((b4 & 0xff)<<24) | ((b3 & 0xff)<<16) | ((b2 & 0xff)<<8) | (b1 & 0xff));
     }
     
+    /**
+     * Fill the given buffer from the stream, stopping early only at end of
+     * stream
+     * @param input the stream to read
+     * @param buffer the buffer to fill
+     * @return the number of bytes actually read
+     * @throws IOException if the read fails
+     */
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int count = input.read(buffer, offset, buffer.length - offset);
+            if (count < 0) {
+                break;
+            }
+            offset += count;
+        }
+        return offset;
+    }
+
+    /**
+     * Skip over the given number of bytes, stopping early only at end of
+     * stream
+     * @param input the stream to skip through
+     * @param count the number of bytes to skip
+     * @throws IOException if the skip fails
+     */
+    private static void skipFully(InputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    break;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
     public short byteToShort(byte[] byteArray){
         byte b1    = byteArray[0]; 
         byte b2    = byteArray[1];
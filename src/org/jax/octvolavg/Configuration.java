@@ -92,6 +92,47 @@ public final class Configuration {
         this.unsavedChanges = true;
     }
     
+    /**
+     * The number of z positions that are registered concurrently. A value
+     * less than one means one worker per available processor.
+     * @return the registration worker count
+     */
+    public int getRegistrationThreadCount() {
+        return Integer.parseInt(this.props.getProperty("registrationThreadCount").trim());
+    }
+    
+    public void setRegistrationThreadCount(int registrationThreadCount) {
+        this.props.setProperty("registrationThreadCount", Integer.toString(registrationThreadCount));
+        this.unsavedChanges = true;
+    }
+    
+    /**
+     * Should the registration of each repeat start from the landmarks found
+     * for the same repeat at the previous z position?
+     * @return true if registration is warm started
+     */
+    public boolean getWarmStartRegistration() {
+        return this.getBoolNamed("warmStartRegistration");
+    }
+    
+    public void setWarmStartRegistration(boolean warmStartRegistration) {
+        this.setBoolNamed("warmStartRegistration", warmStartRegistration);
+        this.unsavedChanges = true;
+    }
+    
+    /**
+     * The strip compression used for the result TIFF files
+     * @return the output compression
+     */
+    public TIFFStackWriter.Compression getOutputCompression() {
+        return TIFFStackWriter.Compression.parse(this.props.getProperty("outputCompression"));
+    }
+    
+    public void setOutputCompression(TIFFStackWriter.Compression outputCompression) {
+        this.props.setProperty("outputCompression", outputCompression.name().toLowerCase());
+        this.unsavedChanges = true;
+    }
+    
     public boolean getUseDirectoryForInput() {
         return this.getBoolNamed("useDirectoryForInput");
     }
@@ -0,0 +1,336 @@
+package org.jax.octvolavg;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Converts the slices of a stack to 8-bit depth so that the stack's
+ * intensity range fills the available 8-bit range. The range is found with
+ * a parallel reduction over the slices and slices are quantised in parallel
+ * bands of rows.
+ *
+ * The result is the same as we've always produced by scanning every slice
+ * column by column: the minimum only counts values above zero, and a value
+ * that lowers the minimum is not also considered for the maximum. That
+ * makes the maximum depend on scan order, so each part of the reduction
+ * keeps enough of a summary to be combined with its neighbours in the
+ * original order.
+ *
+ * Stacks whose slices are computed when they are asked for (like an
+ * {@link EnFaceStack}) should be converted a batch of slices at a time with
+ * {@link #convert(ImageStack, int, int)} so that the slices are computed in
+ * parallel as well.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class EightBitConverter {
+
+    /**
+     * Bands of at most this many rows are not split further
+     */
+    private static final int BAND_ROWS = 32;
+
+    private final ForkJoinPool pool;
+    private final float minVal;
+    private final float maxVal;
+    private final float multiplier;
+
+    /**
+     * Find the intensity range of the given stack
+     * @param is    the stack
+     * @param pool  the pool that we do the work on
+     */
+    public EightBitConverter(ImageStack is, ForkJoinPool pool) {
+        this.pool = pool;
+
+        RangeSummary range = new RangeSummary();
+        if(is.getSize() > 0) {
+            range = pool.invoke(new RangeTask(is, 1, is.getSize() + 1));
+        }
+        this.minVal = Math.min(Float.MAX_VALUE, range.minPositive);
+        this.maxVal = range.maxAfter(Float.MAX_VALUE);
+        this.multiplier = 0xFF / (this.maxVal - this.minVal);
+    }
+
+    /**
+     * Getter for the smallest value above zero
+     * @return the min value
+     */
+    public float getMinValue() {
+        return this.minVal;
+    }
+
+    /**
+     * Getter for the max value
+     * @return the max value
+     */
+    public float getMaxValue() {
+        return this.maxVal;
+    }
+
+    /**
+     * Convert a slice. Zero stays zero and everything else is shifted by the
+     * min value and scaled to the 8-bit range
+     * @param ip    the slice to convert
+     * @return  the 8-bit slice
+     */
+    public ByteProcessor convert(ImageProcessor ip) {
+        ByteProcessor bp = new ByteProcessor(ip.getWidth(), ip.getHeight());
+        this.pool.invoke(new QuantiseTask(
+                ip,
+                (byte[])bp.getPixels(),
+                0,
+                ip.getHeight()));
+        return bp;
+    }
+
+    /**
+     * Convert a run of slices. The slices are taken from the stack and
+     * converted in parallel
+     * @param is    the stack
+     * @param first the first slice number (one based)
+     * @param last  the slice number following the run
+     * @return  the 8-bit slices in order
+     */
+    public ByteProcessor[] convert(ImageStack is, int first, int last) {
+        ByteProcessor[] slices = new ByteProcessor[last - first];
+        if(slices.length > 0) {
+            this.pool.invoke(new ConvertTask(is, slices, first, first, last));
+        }
+        return slices;
+    }
+
+    /**
+     * Summarises the values of a run of the scan. All fields only consider
+     * values above zero since nothing else can change the min or the max
+     */
+    private static class RangeSummary {
+        /**
+         * the smallest value
+         */
+        float minPositive = Float.POSITIVE_INFINITY;
+
+        /**
+         * the largest value
+         */
+        float maxPositive = 0.0f;
+
+        /**
+         * the largest value that doesn't lower the min of the values before
+         * it in this run
+         */
+        float maxNonLowering = 0.0f;
+
+        /**
+         * Get the max that a sequential scan ends with if this run is
+         * scanned after values whose min is given
+         * @param minBefore the min of the values scanned before this run
+         * @return  the max for this run
+         */
+        float maxAfter(float minBefore) {
+            if(this.maxPositive >= minBefore) {
+                return this.maxPositive;
+            } else {
+                return this.maxNonLowering;
+            }
+        }
+
+        /**
+         * Add a value to the end of this run
+         * @param f the value
+         */
+        void add(float f) {
+            if(f > 0.0f) {
+                if(f >= this.minPositive && f > this.maxNonLowering) {
+                    this.maxNonLowering = f;
+                }
+                if(f < this.minPositive) {
+                    this.minPositive = f;
+                }
+                if(f > this.maxPositive) {
+                    this.maxPositive = f;
+                }
+            }
+        }
+
+        /**
+         * Add the run that follows this one
+         * @param next  the following run
+         */
+        void add(RangeSummary next) {
+            this.maxNonLowering = Math.max(
+                    this.maxNonLowering,
+                    next.maxAfter(this.minPositive));
+            this.minPositive = Math.min(this.minPositive, next.minPositive);
+            this.maxPositive = Math.max(this.maxPositive, next.maxPositive);
+        }
+    }
+
+    /**
+     * Summarise a single slice which is scanned column by column. We read
+     * the pixels row by row though and keep a summary per column which are
+     * then combined in column order
+     * @param ip    the slice
+     * @return  the summary
+     */
+    private static RangeSummary summariseSlice(ImageProcessor ip) {
+        int sizeX = ip.getWidth();
+        int sizeY = ip.getHeight();
+        RangeSummary[] columns = new RangeSummary[sizeX];
+        for(int x = 0; x < sizeX; x++) {
+            columns[x] = new RangeSummary();
+        }
+
+        Object pixels = ip.getPixels();
+        float[] floatPixels = pixels instanceof float[] ? (float[])pixels : null;
+        for(int y = 0, i = 0; y < sizeY; y++) {
+            for(int x = 0; x < sizeX; x++, i++) {
+                columns[x].add(floatPixels == null ? ip.getf(i) : floatPixels[i]);
+            }
+        }
+
+        RangeSummary summary = new RangeSummary();
+        for(int x = 0; x < sizeX; x++) {
+            summary.add(columns[x]);
+        }
+        return summary;
+    }
+
+    /**
+     * Summarises a run of slices
+     */
+    private static class RangeTask extends RecursiveTask<RangeSummary> {
+        private static final long serialVersionUID = 1L;
+
+        private final ImageStack is;
+        private final int first;
+        private final int last;
+
+        /**
+         * Constructor
+         * @param is    the stack
+         * @param first the first slice number (one based)
+         * @param last  the slice number following the run
+         */
+        public RangeTask(ImageStack is, int first, int last) {
+            this.is = is;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected RangeSummary compute() {
+            if(this.last - this.first == 1) {
+                return summariseSlice(this.is.getProcessor(this.first));
+            }
+
+            int middle = (this.first + this.last) / 2;
+            RangeTask upper = new RangeTask(this.is, middle, this.last);
+            upper.fork();
+            RangeSummary summary = new RangeTask(this.is, this.first, middle).compute();
+            summary.add(upper.join());
+            return summary;
+        }
+    }
+
+    /**
+     * Takes a run of slices from a stack and converts them
+     */
+    private class ConvertTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ImageStack is;
+        private final ByteProcessor[] slices;
+        private final int offset;
+        private final int first;
+        private final int last;
+
+        /**
+         * Constructor
+         * @param is        the stack
+         * @param slices    filled with the converted slices
+         * @param offset    the slice number that goes in slices[0]
+         * @param first     the first slice number (one based)
+         * @param last      the slice number following the run
+         */
+        public ConvertTask(ImageStack is, ByteProcessor[] slices, int offset, int first, int last) {
+            this.is = is;
+            this.slices = slices;
+            this.offset = offset;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.last - this.first == 1) {
+                ImageProcessor ip = this.is.getProcessor(this.first);
+                ByteProcessor bp = new ByteProcessor(ip.getWidth(), ip.getHeight());
+                new QuantiseTask(ip, (byte[])bp.getPixels(), 0, ip.getHeight()).invoke();
+                this.slices[this.first - this.offset] = bp;
+            } else {
+                int middle = (this.first + this.last) / 2;
+                invokeAll(
+                        new ConvertTask(this.is, this.slices, this.offset, this.first, middle),
+                        new ConvertTask(this.is, this.slices, this.offset, middle, this.last));
+            }
+        }
+    }
+
+    /**
+     * Quantises a band of rows
+     */
+    private class QuantiseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ImageProcessor ip;
+        private final byte[] bytePixels;
+        private final int first;
+        private final int last;
+
+        /**
+         * Constructor
+         * @param ip            the slice to quantise
+         * @param bytePixels    the pixels to write to
+         * @param first         the first row of the band
+         * @param last          the row following the band
+         */
+        public QuantiseTask(ImageProcessor ip, byte[] bytePixels, int first, int last) {
+            this.ip = ip;
+            this.bytePixels = bytePixels;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.last - this.first > BAND_ROWS) {
+                int middle = (this.first + this.last) / 2;
+                invokeAll(
+                        new QuantiseTask(this.ip, this.bytePixels, this.first, middle),
+                        new QuantiseTask(this.ip, this.bytePixels, middle, this.last));
+                return;
+            }
+
+            float minVal = EightBitConverter.this.minVal;
+            float multiplier = EightBitConverter.this.multiplier;
+            Object pixels = this.ip.getPixels();
+            float[] floatPixels = pixels instanceof float[] ? (float[])pixels : null;
+            int width = this.ip.getWidth();
+            int end = this.last * width;
+            for(int i = this.first * width; i < end; i++) {
+                float currVal = floatPixels == null ? this.ip.getf(i) : floatPixels[i];
+                if(currVal == 0.0f) {
+                    this.bytePixels[i] = 0;
+                } else {
+                    this.bytePixels[i] = (byte)Math.round((currVal - minVal) * multiplier);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.jax.octvolavg;
+
+import ij.ImageStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Produces the "en face" view of a registered stack. En face slice y is
+ * made from row y of every registered slice (with the z order reversed) and
+ * is scaled up to a square of side max(X, Z). Scaling gives exactly the same
+ * values as ImageJ's bilinear {@link ImageProcessor#resize(int, int, boolean)}
+ * but it is fused with the reslicing: each output row is interpolated
+ * between two source rows which are read straight out of the registered
+ * slice pixel arrays, so nothing is copied or transposed first. A stack
+ * that is a single pixel wide or holds a single slice is scaled up by
+ * replicating its one source column or row.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class EnFaceResampler {
+
+    private final ImageStack is;
+    private final boolean invertImageStack;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final int sizeMaxXZ;
+
+    // the bilinear source position of each output column and row and the
+    // offset from the lower source pixel to the one that it is blended with
+    private final int[] xBases;
+    private final double[] xFractions;
+    private final int xStep;
+    private final int[] zBases;
+    private final double[] zFractions;
+    private final int zStep;
+
+    /**
+     * Constructor
+     * @param is    the registered stack which must not be empty
+     * @param invertImageStack  indicates if the image stack should be inverted
+     */
+    public EnFaceResampler(ImageStack is, boolean invertImageStack) {
+        this.is = is;
+        this.invertImageStack = invertImageStack;
+        this.sizeX = is.getWidth();
+        this.sizeY = is.getHeight();
+        this.sizeZ = is.getSize();
+        if(this.sizeX < 1 || this.sizeZ < 1) {
+            throw new IllegalArgumentException(
+                    "cannot scale a " + this.sizeX + "x" + this.sizeZ + " en face slice");
+        }
+        this.sizeMaxXZ = Math.max(this.sizeX, this.sizeZ);
+
+        this.xBases = new int[this.sizeMaxXZ];
+        this.xFractions = new double[this.sizeMaxXZ];
+        sourcePositions(this.sizeX, this.sizeMaxXZ, this.xBases, this.xFractions);
+        this.xStep = this.sizeX > 1 ? 1 : 0;
+        this.zBases = new int[this.sizeMaxXZ];
+        this.zFractions = new double[this.sizeMaxXZ];
+        sourcePositions(this.sizeZ, this.sizeMaxXZ, this.zBases, this.zFractions);
+        this.zStep = this.sizeZ > 1 ? 1 : 0;
+    }
+
+    /**
+     * Work out where each destination pixel samples the source along one
+     * axis. This follows ImageJ's FloatProcessor.resize(int, int) with
+     * bilinear interpolation step for step so that the results are the same.
+     * ImageJ can't interpolate a single source pixel so in that case every
+     * destination pixel samples the one source pixel
+     * @param srcSize   the source size along the axis
+     * @param dstSize   the destination size along the axis
+     * @param bases     filled with the index of the lower source pixel
+     * @param fractions filled with the distance past the lower source pixel
+     */
+    private static void sourcePositions(int srcSize, int dstSize, int[] bases, double[] fractions) {
+        if(srcSize == 1) {
+            for(int i = 0; i < dstSize; i++) {
+                bases[i] = 0;
+                fractions[i] = 0.0;
+            }
+            return;
+        }
+
+        double srcCenter = srcSize / 2.0;
+        double dstCenter = dstSize / 2.0;
+        double scale = (double)dstSize / srcSize;
+        dstCenter += scale / 2.0;
+
+        double limit = srcSize - 1.0;
+        double limit2 = srcSize - 1.001;
+        for(int i = 0; i < dstSize; i++) {
+            double s = (i - dstCenter) / scale + srcCenter;
+            if(s < 0.0) {
+                s = 0.0;
+            }
+            if(s >= limit) {
+                s = limit2;
+            }
+            bases[i] = (int)s;
+            fractions[i] = s - bases[i];
+        }
+    }
+
+    /**
+     * Getter for the width and height of the en face slices
+     * @return the size
+     */
+    public int getSize() {
+        return this.sizeMaxXZ;
+    }
+
+    /**
+     * Getter for the number of en face slices
+     * @return the slice count
+     */
+    public int getSliceCount() {
+        return this.sizeY;
+    }
+
+    /**
+     * Get the row of the registered stack that the given en face slice is
+     * made from
+     * @param n the en face slice number (one based)
+     * @return  the row
+     */
+    public int getSourceRow(int n) {
+        return this.invertImageStack ? n - 1 : this.sizeY - n;
+    }
+
+    /**
+     * Compute an en face slice
+     * @param n the en face slice number (one based)
+     * @return  the slice
+     */
+    public FloatProcessor computeSlice(int n) {
+        int y = this.getSourceRow(n);
+        int size = this.sizeMaxXZ;
+        float[] pixels = new float[size * size];
+
+        // source row zs is row y of registered slice (sizeZ - zs). The two
+        // source rows around the current output row are scaled horizontally
+        // once and then blended for every output row between them. With a
+        // single slice both are the same row
+        double[] lower = new double[size];
+        double[] upper = new double[size];
+        int lowerRow = -1;
+        for(int row = 0; row < size; row++) {
+            int zBase = this.zBases[row];
+            if(zBase != lowerRow) {
+                if(lowerRow != -1 && zBase == lowerRow + this.zStep) {
+                    double[] swap = lower;
+                    lower = upper;
+                    upper = swap;
+                } else {
+                    this.scaleRow(zBase, y, lower);
+                }
+                this.scaleRow(zBase + this.zStep, y, upper);
+                lowerRow = zBase;
+            }
+
+            double zFraction = this.zFractions[row];
+            for(int col = 0, i = row * size; col < size; col++, i++) {
+                pixels[i] = (float)(lower[col] + zFraction * (upper[col] - lower[col]));
+            }
+        }
+
+        return new FloatProcessor(size, size, pixels, null);
+    }
+
+    /**
+     * Scale a source row horizontally
+     * @param zs        the source row
+     * @param y         the row of the registered stack that we're reslicing
+     * @param scaled    filled with the scaled row
+     */
+    private void scaleRow(int zs, int y, double[] scaled) {
+        ImageProcessor ip = this.is.getProcessor(this.sizeZ - zs);
+        Object pixels = ip.getPixels();
+        float[] floatPixels = pixels instanceof float[] ? (float[])pixels : null;
+        int rowStart = y * this.sizeX;
+        for(int col = 0; col < scaled.length; col++) {
+            int i = rowStart + this.xBases[col];
+            double left;
+            double right;
+            if(floatPixels == null) {
+                left = ip.getf(i);
+                right = ip.getf(i + this.xStep);
+            } else {
+                left = floatPixels[i];
+                right = floatPixels[i + this.xStep];
+            }
+            scaled[col] = left + this.xFractions[col] * (right - left);
+        }
+    }
+
+    /**
+     * Compute all of the en face slices
+     * @param pool  the pool that the slices are computed on
+     * @return  the en face stack
+     */
+    public ImageStack computeStack(ForkJoinPool pool) {
+        FloatProcessor[] slices = new FloatProcessor[this.sizeY];
+        pool.invoke(new SlicesTask(slices, 0, this.sizeY));
+
+        ImageStack rotStack = new ImageStack(this.sizeMaxXZ, this.sizeMaxXZ);
+        for(int n = 1; n <= this.sizeY; n++) {
+            rotStack.addSlice("" + this.getSourceRow(n), slices[n - 1]);
+        }
+        return rotStack;
+    }
+
+    /**
+     * Computes a run of en face slices
+     */
+    private class SlicesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FloatProcessor[] slices;
+        private final int first;
+        private final int last;
+
+        /**
+         * Constructor
+         * @param slices    filled with the slices
+         * @param first     index of the first slice to compute (zero based)
+         * @param last      index of the slice following the run
+         */
+        public SlicesTask(FloatProcessor[] slices, int first, int last) {
+            this.slices = slices;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.last - this.first == 1) {
+                this.slices[this.first] = EnFaceResampler.this.computeSlice(this.first + 1);
+            } else if(this.last - this.first > 1) {
+                int middle = (this.first + this.last) / 2;
+                invokeAll(
+                        new SlicesTask(this.slices, this.first, middle),
+                        new SlicesTask(this.slices, middle, this.last));
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.jax.octvolavg;
+
+import ij.VirtualStack;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A virtual stack holding the "en face" view of a registered stack. Slices
+ * are only computed (by an {@link EnFaceResampler}) when they are asked for
+ * and the most recently used ones are cached, so viewing a few depths or
+ * streaming the stack out to a file never needs the whole en face volume in
+ * memory. Slices can be asked for from several threads at once.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class EnFaceStack extends VirtualStack {
+
+    /**
+     * The number of slices cached if no cache size is given
+     */
+    public static final int DEFAULT_CACHE_SIZE = 8;
+
+    private final EnFaceResampler resampler;
+    private final Map<Integer, float[]> cache;
+
+    /**
+     * Constructor
+     * @param resampler the resampler that computes the slices
+     * @param cacheSize the number of recently used slices to keep
+     */
+    public EnFaceStack(EnFaceResampler resampler, final int cacheSize) {
+        super(resampler.getSize(), resampler.getSize(), null, null);
+        this.resampler = resampler;
+        this.setBitDepth(32);
+
+        // an access ordered map gives us least recently used eviction
+        this.cache = new LinkedHashMap<Integer, float[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+                return this.size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Constructor that uses the {@link #DEFAULT_CACHE_SIZE}
+     * @param resampler the resampler that computes the slices
+     */
+    public EnFaceStack(EnFaceResampler resampler) {
+        this(resampler, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Get a slice's pixels from the cache or compute them if they aren't
+     * there. The lock isn't held while computing so that different slices
+     * can be computed concurrently
+     * @param n the one based slice number
+     * @return the cached pixels which must not be modified
+     */
+    private float[] getCachedPixels(int n) {
+        if(n < 1 || n > this.getSize()) {
+            throw new IllegalArgumentException("Argument out of range: " + n);
+        }
+
+        Integer key = Integer.valueOf(n);
+        synchronized(this.cache) {
+            float[] pixels = this.cache.get(key);
+            if(pixels != null) {
+                return pixels;
+            }
+        }
+
+        float[] pixels = (float[])this.resampler.computeSlice(n).getPixels();
+        synchronized(this.cache) {
+            this.cache.put(key, pixels);
+        }
+        return pixels;
+    }
+
+    /**
+     * Get a copy of a slice's pixels
+     * @param n the one based slice number
+     * @return a float[] holding the pixels
+     */
+    @Override
+    public Object getPixels(int n) {
+        return this.getCachedPixels(n).clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ImageProcessor getProcessor(int n) {
+        return new FloatProcessor(this.getWidth(), this.getHeight(), (float[])this.getPixels(n), null);
+    }
+
+    /**
+     * Slices are computed so they can't be set
+     */
+    @Override
+    public void setPixels(Object pixels, int n) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Slices are computed so they can't be deleted
+     */
+    @Override
+    public void deleteSlice(int n) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return this.resampler.getSliceCount();
+    }
+
+    /**
+     * The label is the row of the registered stack that the slice came from
+     * @param n the one based slice number
+     * @return the label
+     */
+    @Override
+    public String getSliceLabel(int n) {
+        return "" + this.resampler.getSourceRow(n);
+    }
+}
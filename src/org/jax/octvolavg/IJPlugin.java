@@ -85,6 +85,9 @@ public class IJPlugin implements PlugIn {
                 final Mailbox<Integer> cropFromBottomMailbox = new Mailbox<Integer>();
                 final Mailbox<Boolean> isInvertedMailbox = new Mailbox<Boolean>();
                 final Mailbox<Boolean> keepIntermediateMailbox = new Mailbox<Boolean>();
+                final Mailbox<Integer> registrationThreadCountMailbox = new Mailbox<Integer>();
+                final Mailbox<Boolean> warmStartRegistrationMailbox = new Mailbox<Boolean>();
+                final Mailbox<TIFFStackWriter.Compression> outputCompressionMailbox = new Mailbox<TIFFStackWriter.Compression>();
                 final Mailbox<Map<String, Iterator<ImagePlus>>> imgIterMapMailbox = new Mailbox<Map<String, Iterator<ImagePlus>>>();
                 
                 SwingUtilities.invokeLater(new Runnable() {
@@ -101,6 +104,9 @@ public class IJPlugin implements PlugIn {
                                 cropFromBottomMailbox.put(ijPluginOptions.getCropFromBottomPixels());
                                 isInvertedMailbox.put(ijPluginOptions.isInvertedImageStack());
                                 keepIntermediateMailbox.put(ijPluginOptions.getKeepIntermediate());
+                                registrationThreadCountMailbox.put(ijPluginOptions.getRegistrationThreadCount());
+                                warmStartRegistrationMailbox.put(ijPluginOptions.getWarmStartRegistration());
+                                outputCompressionMailbox.put(ijPluginOptions.getOutputCompression());
                                 imgIterMapMailbox.put(ijPluginOptions.getImageIteratorMap());
                             }
                         } catch(Throwable ex) {
@@ -115,6 +121,9 @@ public class IJPlugin implements PlugIn {
                                 cropFromBottomMailbox.putNullIfEmpty();
                                 isInvertedMailbox.putNullIfEmpty();
                                 keepIntermediateMailbox.putNullIfEmpty();
+                                registrationThreadCountMailbox.putNullIfEmpty();
+                                warmStartRegistrationMailbox.putNullIfEmpty();
+                                outputCompressionMailbox.putNullIfEmpty();
                                 imgIterMapMailbox.putNullIfEmpty();
                             } catch(InterruptedException ex) {
                                 ex.printStackTrace();
@@ -131,6 +140,9 @@ public class IJPlugin implements PlugIn {
                             cropFromBottomMailbox.take(),
                             isInvertedMailbox.take(),
                             keepIntermediateMailbox.take(),
+                            registrationThreadCountMailbox.take(),
+                            warmStartRegistrationMailbox.take(),
+                            outputCompressionMailbox.take(),
                             new DocumentLogger(null),
                             new AtomicBoolean(false));
                     Map<String, Iterator<ImagePlus>> imageIterMap = imgIterMapMailbox.take();
@@ -112,6 +112,24 @@ public class IJPluginOptions extends javax.swing.JDialog
                     // the groupings failed. Try to get the files ungrouped
                     return Collections.singletonMap(null, this.getUngroupedImageIterator());
                 } else {
+                    // check the OCT headers up front so that a bad group
+                    // doesn't fail after its volumes have been decoded
+                    DocumentLogger docLogger = new DocumentLogger(null);
+                    for(String group : LazyOCTReader.findInconsistentGroups(imgGrps, docLogger)) {
+                        docLogger.println(
+                                "skipping image group " + group +
+                                " since its OCT files don't have matching dimensions");
+                        imgGrps.remove(group);
+                    }
+                    if(imgGrps.isEmpty()) {
+                        JOptionPane.showMessageDialog(
+                                this,
+                                "None of the OCT image groups have matching dimensions",
+                                "No Matching OCT Image Groups",
+                                JOptionPane.WARNING_MESSAGE);
+                        return Collections.emptyMap();
+                    }
+                    
                     HashMap<String, Iterator<ImagePlus>> imgGroupMap =
                             new HashMap<String, Iterator<ImagePlus>>();
                     for(Map.Entry<String, List<File>> entry: imgGrps.entrySet()) {
@@ -202,6 +220,18 @@ public class IJPluginOptions extends javax.swing.JDialog
     public int getCropFromBottomPixels() {
         return ((Number)this.pixelsClipFromBottomText.getValue()).intValue();
     }
+    
+    public int getRegistrationThreadCount() {
+        return this.conf.getRegistrationThreadCount();
+    }
+    
+    public boolean getWarmStartRegistration() {
+        return this.conf.getWarmStartRegistration();
+    }
+    
+    public TIFFStackWriter.Compression getOutputCompression() {
+        return this.conf.getOutputCompression();
+    }
 
     /**
      * Validate the UI settings. This function assumes that we're running in
@@ -4,7 +4,12 @@ import ij.ImagePlus;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.bioptigen.OCT_Reader;
 
@@ -31,6 +36,56 @@ public class LazyOCTReader implements Iterator<ImagePlus> {
         this.use8Bit = use8Bit;
     }
 
+    /**
+     * Scan the header of every OCT file in the given groups and find the
+     * groups whose files don't all have the same frame count, line count and
+     * line length (or whose headers can't be read). Only the headers are
+     * read so this is quick enough to run before any decoding starts
+     * @param imgFileGroups the groups as returned by
+     *          {@link Utilities#imgGroupsIn(File, java.util.regex.Pattern)}
+     * @param docLogger the document logger that each problem is reported to
+     * @return  the names of the inconsistent groups
+     */
+    public static Set<String> findInconsistentGroups(
+            Map<String, List<File>> imgFileGroups,
+            DocumentLogger docLogger) {
+        OCT_Reader octReader = new OCT_Reader();
+        Set<String> inconsistentGroups = new HashSet<String>();
+        for(Map.Entry<String, List<File>> imgFileGroup : imgFileGroups.entrySet()) {
+            File firstFile = null;
+            int[] firstDims = null;
+            for(File octFile : imgFileGroup.getValue()) {
+                int[] dims;
+                try {
+                    dims = octReader.scanOctHeader(octFile.getAbsolutePath());
+                } catch(IOException ex) {
+                    docLogger.println(
+                            "Error: failed to read the header of " + octFile.getAbsolutePath() +
+                            ": " + ex.getMessage());
+                    inconsistentGroups.add(imgFileGroup.getKey());
+                    break;
+                }
+                
+                if(firstDims == null) {
+                    firstFile = octFile;
+                    firstDims = dims;
+                } else if(!Arrays.equals(firstDims, dims)) {
+                    docLogger.println(
+                            "Error: " + octFile.getAbsolutePath() + " has " + describeDims(dims) +
+                            " but " + firstFile.getAbsolutePath() + " has " + describeDims(firstDims));
+                    inconsistentGroups.add(imgFileGroup.getKey());
+                    break;
+                }
+            }
+        }
+        
+        return inconsistentGroups;
+    }
+    
+    private static String describeDims(int[] dims) {
+        return dims[0] + " frames of " + dims[1] + " lines with " + dims[2] + " samples per line";
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -45,7 +100,20 @@ public class LazyOCTReader implements Iterator<ImagePlus> {
         File inputOCT = this.fileIter.next();
         this.docLogger.println("Reading " + inputOCT.getAbsolutePath());
         try {
-            ImagePlus img = this.octReader.loadOctFile(inputOCT.getAbsolutePath(), "", false, this.use8Bit);
+            ImagePlus img;
+            if(inputOCT.length() > Integer.MAX_VALUE) {
+                // the OCT_Reader buffers the whole file in a single array
+                // which can't hold more than 2 GB so large files are mapped
+                MappedOCTReader mappedReader = new MappedOCTReader(inputOCT);
+                try {
+                    img = mappedReader.readImage("", this.use8Bit);
+                } finally {
+                    mappedReader.close();
+                }
+            } else {
+                // the Doppler data is never used for averaging so don't decode it
+                img = this.octReader.loadOctFile(inputOCT.getAbsolutePath(), "", false, this.use8Bit, true);
+            }
             img.setTitle(Utilities.removeExtension(inputOCT.getName()));
             return img;
         } catch(IOException ex) {
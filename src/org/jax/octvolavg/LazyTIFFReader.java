@@ -42,6 +42,13 @@ public class LazyTIFFReader implements Iterator<ImagePlus> {
         File tiffFileIn = this.fileIter.next();
         this.docLogger.println("Reading " + tiffFileIn.getAbsolutePath());
         try {
+            // uncompressed stacks are served straight from a mapping of the
+            // file. Anything else goes through the ImageJ opener
+            MappedTIFFStack mappedStack = MappedTIFFStack.open(tiffFileIn);
+            if(mappedStack != null) {
+                return new ImagePlus(Utilities.removeExtension(tiffFileIn.getName()), mappedStack);
+            }
+            
             InputStream tiffIn = new BufferedInputStream(new FileInputStream(tiffFileIn));
             Opener opener = new Opener();
             ImagePlus tiffImg = opener.openTiff(tiffIn, Utilities.removeExtension(tiffFileIn.getName()));
@@ -5,18 +5,22 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.Menus;
 import ij.WindowManager;
-import ij.io.FileSaver;
 import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainDriver {
@@ -27,6 +31,9 @@ public class MainDriver {
     private final int pixelsToCropFromBottom;
     private final boolean invertedImageStack;
     private final boolean keepIntermediateTiffs;
+    private final int registrationThreadCount;
+    private final boolean warmStartRegistration;
+    private final TIFFStackWriter.Compression outputCompression;
     private final DocumentLogger docLogger;
     private final AtomicBoolean isCanceled;
 
@@ -37,6 +44,14 @@ public class MainDriver {
      * @param pixelsToCropFromBottom the number of pixels of the image that should be cropped from the bottom
      * @param invertedImageStack is the image stack inverted (eg: EDI)
      * @param keepIntermediateTiffs should we keep intermediate TIFF files?
+     * @param registrationThreadCount the number of z positions to register
+     *          concurrently. Values less than one mean one per available
+     *          processor
+     * @param warmStartRegistration should the registration of each repeat
+     *          start from the landmarks found for the same repeat at the
+     *          previous z position?
+     * @param outputCompression the strip compression used for the result
+     *          TIFF files
      * @param docLogger our logger
      * @param isCanceled will be set to true upon user cancellation
      */
@@ -46,6 +61,9 @@ public class MainDriver {
             int pixelsToCropFromBottom,
             boolean invertedImageStack,
             boolean keepIntermediateTiffs,
+            int registrationThreadCount,
+            boolean warmStartRegistration,
+            TIFFStackWriter.Compression outputCompression,
             DocumentLogger docLogger,
             AtomicBoolean isCanceled) {
         this.outputDir = outputDir;
@@ -53,6 +71,11 @@ public class MainDriver {
         this.pixelsToCropFromBottom = pixelsToCropFromBottom;
         this.invertedImageStack = invertedImageStack;
         this.keepIntermediateTiffs = keepIntermediateTiffs;
+        this.registrationThreadCount = registrationThreadCount < 1 ?
+                Runtime.getRuntime().availableProcessors() :
+                registrationThreadCount;
+        this.warmStartRegistration = warmStartRegistration;
+        this.outputCompression = outputCompression;
         this.docLogger = docLogger;
         this.isCanceled = isCanceled;
     }
@@ -134,76 +157,112 @@ public class MainDriver {
         int sizeX = -1;
         int sizeY = -1;
         int sizeZ = -1;
+        ImageStack regAvgStack = null;
         
-        ArrayList<ArrayList<File>> zSlices = new ArrayList<ArrayList<File>>();
-        while(imgs.hasNext()) {
-            if(this.isCanceled.get()) {
-                return;
-            }
-            
-            ImageStack currStack = this.preProcessStack(groupName, imgs.next());
-            if(sizeX == -1) {
-                sizeX = currStack.getWidth();
-                sizeY = currStack.getHeight();
-                sizeZ = currStack.getSize();
-                for(int z = 0; z < sizeZ; z++) {
-                    zSlices.add(new ArrayList<File>());
+        // only the volume being cropped is kept in memory. Every volume is
+        // spilled to a temporary file and its slices are read back one z
+        // position at a time while registering
+        final ArrayList<SliceSpillFile> repeats = new ArrayList<SliceSpillFile>();
+        try {
+            // the next few volumes are read in the background while we crop
+            // and spill the current one
+            PrefetchingImageIterator prefetchingImgs = new PrefetchingImageIterator(
+                    imgs,
+                    PREFETCH_COUNT,
+                    Runtime.getRuntime().maxMemory() / PREFETCH_HEAP_FRACTION);
+            try {
+                while(prefetchingImgs.hasNext()) {
+                    if(this.isCanceled.get()) {
+                        return;
+                    }
+                    
+                    ImageStack currStack = this.preProcessStack(groupName, prefetchingImgs.next());
+                    if(this.isCanceled.get()) {
+                        return;
+                    }
+                    if(sizeX == -1) {
+                        sizeX = currStack.getWidth();
+                        sizeY = currStack.getHeight();
+                        sizeZ = currStack.getSize();
+                    } else if(sizeX != currStack.getWidth()) {
+                        throw new IOException(
+                                "the current stack width of " + currStack.getWidth() +
+                                " doesn't match the previous of " + sizeX);
+                    } else if(sizeY != currStack.getHeight()) {
+                        throw new IOException(
+                                "the current stack height of " + currStack.getHeight() +
+                                " doesn't match the previous of " + sizeY);
+                    } else if(sizeZ != currStack.getSize()) {
+                        throw new IOException(
+                                "the current stack size of " + currStack.getSize() +
+                                " doesn't match the previous of " + sizeZ);
+                    }
+                    
+                    repeats.add(new SliceSpillFile(currStack));
                 }
-            } else if(sizeX != currStack.getWidth()) {
-                throw new IOException(
-                        "the current stack width of " + currStack.getWidth() +
-                        " doesn't match the previous of " + sizeX);
-            } else if(sizeY != currStack.getHeight()) {
-                throw new IOException(
-                        "the current stack height of " + currStack.getHeight() +
-                        " doesn't match the previous of " + sizeY);
-            } else if(sizeZ != currStack.getSize()) {
-                throw new IOException(
-                        "the current stack size of " + currStack.getSize() +
-                        " doesn't match the previous of " + sizeZ);
+            } finally {
+                prefetchingImgs.close();
             }
             
-            for(int z = 0; z < sizeZ; z++) {
-                if(this.isCanceled.get()) {
-                    return;
-                }
-                ImageProcessor ip = currStack.getProcessor(z + 1);
-                File f = File.createTempFile("slice", ".tif");
-                new FileSaver(new ImagePlus("", ip)).saveAsTiff(f.getAbsolutePath());
-                zSlices.get(z).add(f);
-            }
-        }
-        
-        ImageStack regAvgStack = new ImageStack(sizeX, sizeY);
-        for(int z = 0; z < sizeZ; z++) {
-            if(this.isCanceled.get()) {
-                return;
+            // each block of neighbouring z positions is registered and averaged
+            // independently so we hand them to a pool of workers. Within a block
+            // every repeat can start from the landmarks found at the previous z.
+            // The block size doesn't depend on the worker count which keeps the
+            // output the same for any number of workers. invokeAll returns the
+            // futures in submission order which keeps the output stack in z order
+            final ForkJoinPool pool = new ForkJoinPool(this.registrationThreadCount);
+            final int blockSize = this.warmStartRegistration ? WARM_START_BLOCK_SIZE : 1;
+            List<Callable<ImageProcessor[]>> blockTasks = new ArrayList<Callable<ImageProcessor[]>>();
+            for(int blockStart = 0; blockStart < sizeZ; blockStart += blockSize) {
+                final int currBlockStart = blockStart;
+                final int currBlockEnd = Math.min(blockStart + blockSize, sizeZ);
+                final int currSizeX = sizeX;
+                final int currSizeY = sizeY;
+                blockTasks.add(new Callable<ImageProcessor[]>() {
+                    public ImageProcessor[] call() throws IOException {
+                        ImageProcessor[] projs = new ImageProcessor[currBlockEnd - currBlockStart];
+                        double[][][] sourceLandmarks = null;
+                        if(MainDriver.this.warmStartRegistration) {
+                            sourceLandmarks = new double[repeats.size()][][];
+                        }
+                        for(int z = currBlockStart; z < currBlockEnd; z++) {
+                            projs[z - currBlockStart] = MainDriver.this.registerAndAverage(
+                                    z,
+                                    repeats,
+                                    currSizeX,
+                                    currSizeY,
+                                    pool,
+                                    sourceLandmarks);
+                        }
+                        return projs;
+                    }
+                });
             }
             
-            this.docLogger.println("registering slices at frame " + (z + 1));
-            
-            ArrayList<File> currSliceList = zSlices.get(z);
-            ArrayList<ImageProcessor> ips = new ArrayList<ImageProcessor>(currSliceList.size());
-            File fstImgFile = null;
-            for(File f : currSliceList) {
-                if(this.isCanceled.get()) {
-                    return;
-                }
-                if(fstImgFile == null) {
-                    fstImgFile = f;
+            regAvgStack = new ImageStack(sizeX, sizeY);
+            try {
+                List<Future<ImageProcessor[]>> blockResults = pool.invokeAll(blockTasks);
+                for(int block = 0; block < blockResults.size(); block++) {
+                    ImageProcessor[] projs = blockResults.get(block).get();
+                    if(this.isCanceled.get()) {
+                        return;
+                    }
+                    for(int i = 0; i < projs.length; i++) {
+                        if(projs[i] != null) {
+                            regAvgStack.addSlice("" + (block * blockSize + i), projs[i]);
+                        }
+                    }
                 }
-                ips.add(this.turboAlignSliceRigid(sizeX, sizeY, f, fstImgFile).getProcessor());
-//                ips.add(this.turboAlignSliceAffine(sizeX, sizeY, f, fstImgFile).getProcessor());
-            }
-            
-            if(fstImgFile != null) {
-                fstImgFile.delete();
-                ImagePlus proj = Utilities.zProjectMean(ips, sizeX, sizeY);
-                regAvgStack.addSlice("" + z, proj.getProcessor());
+            } catch(InterruptedException ex) {
+                throw new IOException(ex);
+            } catch(ExecutionException ex) {
+                throw new IOException(ex.getCause());
+            } finally {
+                pool.shutdown();
             }
-            
-            for(File f : currSliceList) {
-                f.delete();
+        } finally {
+            for(SliceSpillFile repeat : repeats) {
+                repeat.close();
             }
         }
         
@@ -223,17 +282,15 @@ public class MainDriver {
             return;
         }
         this.docLogger.println("converting image to enface");
-        ImagePlus rotImg = Utilities.toEnFace(regAvgImg, this.invertedImageStack);
+        // en face slices are computed as they're saved or converted so the
+        // whole en face volume is never held in memory
+        ImagePlus rotImg = Utilities.toVirtualEnFace(regAvgImg, this.invertedImageStack);
         
         if(this.isCanceled.get()) {
             return;
         }
         this.docLogger.println("saving image stacks");
         String namePrefix = groupName == null ? "" : (groupName + "_");
-        regAvgImg = to8BitDepth(regAvgImg);
-        regAvgImg.setTitle(namePrefix + "regAvgImg");
-        rotImg = to8BitDepth(rotImg);
-        rotImg.setTitle(namePrefix + "rotatedRegAvgImg");
         
         if(this.outputDir != null) {
             File outDir = groupName == null ? this.outputDir : new File(this.outputDir, groupName);
@@ -241,17 +298,93 @@ public class MainDriver {
             File regAvgImgFile = new File(outDir, namePrefix + "regAvgImg.tif");
             File rotImgFile = new File(outDir, namePrefix + "rotatedRegAvgImg.tif");
             
-            Utilities.safeRenderAsTIFF(regAvgImg, regAvgImgFile, this.docLogger);
+            this.saveAs8BitTIFF(regAvgImg, regAvgImgFile);
             if(this.isCanceled.get()) {
                 return;
             }
-            Utilities.safeRenderAsTIFF(rotImg, rotImgFile, this.docLogger);
+            this.saveAs8BitTIFF(rotImg, rotImgFile);
         } else {
+            regAvgImg = to8BitDepth(regAvgImg);
+            regAvgImg.setTitle(namePrefix + "regAvgImg");
+            rotImg = to8BitDepth(rotImg);
+            rotImg.setTitle(namePrefix + "rotatedRegAvgImg");
             regAvgImg.show();
             rotImg.show();
         }
     }
 
+    /**
+     * Register every repeat at the given z position against the first one
+     * and average the results. This is called concurrently for different
+     * z positions.
+     * @param z the z index
+     * @param repeats the spilled volumes of the group. Slice z + 1 of each
+     *          is read back in turn
+     * @param sizeX the slice width
+     * @param sizeY the slice height
+     * @param executor the executor that TurboReg pyramid computations are
+     *          handed to
+     * @param sourceLandmarks if not null, holds the source landmarks of
+     *          every repeat found at the previous z position (null entries
+     *          fall back on the default landmarks). On return it holds the
+     *          landmarks found at this z position
+     * @return  the averaged slice or null if canceled or if there were no
+     *          repeats
+     * @throws IOException if we fail to read back a repeat
+     */
+    private ImageProcessor registerAndAverage(
+            int z,
+            List<SliceSpillFile> repeats,
+            int sizeX,
+            int sizeY,
+            ExecutorService executor,
+            double[][][] sourceLandmarks) throws IOException {
+        if(this.isCanceled.get()) {
+            return null;
+        }
+        
+        this.docLogger.println("registering slices at frame " + (z + 1));
+        
+        // repeats are read back one at a time and go straight into the mean
+        // once registered so that only the one being registered is held on to
+        MeanAccumulator mean = new MeanAccumulator(sizeX, sizeY);
+        TurboReg turboReg = new TurboReg(executor);
+        TurboReg.Reference reference = null;
+        int optimizerIterationCount = 0;
+        for(int i = 0; i < repeats.size(); i++) {
+            if(this.isCanceled.get()) {
+                return null;
+            }
+            ImageProcessor ip = repeats.get(i).getProcessor(z + 1);
+            if(reference == null) {
+                // the first repeat is the target of all others so there is
+                // nothing to register: pass it through untouched
+                reference = turboReg.createReference(ip, TurboReg.RIGID_BODY);
+                mean.add(ip);
+            } else {
+                double[][] initialLandmarks = null;
+                if(sourceLandmarks != null && i < sourceLandmarks.length) {
+                    initialLandmarks = sourceLandmarks[i];
+                }
+                mean.add(this.turboAlignSliceRigid(turboReg, ip, reference, initialLandmarks));
+                optimizerIterationCount += turboReg.getOptimizerIterationCount();
+                if(sourceLandmarks != null && i < sourceLandmarks.length) {
+                    sourceLandmarks[i] = turboReg.getSourcePoints();
+                }
+//                mean.add(this.turboAlignSliceAffine(ip, reference.getProcessor()));
+            }
+        }
+        this.docLogger.println(
+                "registered slices at frame " + (z + 1) + " in " +
+                optimizerIterationCount + " TurboReg optimizer iterations");
+        
+        if(reference == null) {
+            return null;
+        } else {
+            return mean.getMean();
+        }
+    }
+    
     /**
      * Convert the given image to 8-bit depth while trying to make the most of
      * the available color range.
@@ -265,45 +398,78 @@ public class MainDriver {
         int sizeY = is.getHeight();
         int sizeZ = is.getSize();
         
-        // we need to find the min and max values so that we can fill the
-        // available intensity range
-        float maxVal = 0.0f;
-        float minVal = Float.MAX_VALUE;
-        for(int z = 0; z < sizeZ; z++) {
-            for(float[] fs : is.getProcessor(z + 1).getFloatArray()) {
-                for(float f: fs) {
-                    if(f < minVal && f > 0.0f) {
-                        minVal = f;
-                    } else if(f > maxVal) {
-                        maxVal = f;
-                    }
+        ForkJoinPool pool = new ForkJoinPool(this.registrationThreadCount);
+        try {
+            // we need to find the min and max values so that we can fill the
+            // available intensity range
+            EightBitConverter converter = new EightBitConverter(is, pool);
+            
+            // now that we have the intensity range we can use it to convert
+            // values into our 8-bit range. Slices are converted a batch at a
+            // time so that computed (en face) slices are made in parallel
+            ImageStack newIS = new ImageStack(sizeX, sizeY);
+            int batchSize = pool.getParallelism();
+            for(int z = 0; z < sizeZ; z += batchSize) {
+                ByteProcessor[] batch = converter.convert(is, z + 1, Math.min(z + batchSize, sizeZ) + 1);
+                for(int i = 0; i < batch.length; i++) {
+                    newIS.addSlice((z + i) + "", batch[i]);
                 }
             }
+            
+            return new ImagePlus("", newIS);
+        } finally {
+            pool.shutdown();
         }
-        float multiplier = 0xFF / (maxVal - minVal);
+    }
+    
+    /**
+     * Convert the given image to 8-bit depth in the same way as
+     * {@link #to8BitDepth(ImagePlus)} and save it as a TIFF. Slices are
+     * converted and written a batch (one slice per worker) at a time so only
+     * that many 8-bit slices are ever held in memory. An existing file is
+     * not overwritten
+     * @param img       the image to save
+     * @param tiffFile  the file to save to
+     * @throws IOException if the file can't be written
+     */
+    private void saveAs8BitTIFF(ImagePlus img, File tiffFile) throws IOException {
+        ImageStack is = img.getImageStack();
+        int sizeZ = is.getSize();
         
-        // now that we have the intensity range we can use it to convert
-        // values into our 8-bit range
-        ImageStack newIS = new ImageStack(sizeX, sizeY);
-        for(int z = 0; z < sizeZ; z++) {
-            ImageProcessor ip = is.getProcessor(z + 1);
-            ByteProcessor bp = new ByteProcessor(sizeX, sizeY);
+        TIFFStackWriter writer = Utilities.safeOpenTIFFWriter(
+                tiffFile,
+                is.getWidth(),
+                is.getHeight(),
+                8,
+                sizeZ,
+                this.outputCompression,
+                this.registrationThreadCount,
+                this.docLogger);
+        if(writer == null) {
+            return;
+        }
+        
+        ForkJoinPool pool = new ForkJoinPool(this.registrationThreadCount);
+        try {
+            EightBitConverter converter = new EightBitConverter(is, pool);
             
-            for(int x = 0; x < sizeX; x++) {
-                for(int y = 0; y < sizeY; y++) {
-                    float currVal = ip.getf(x, y);
-                    if(currVal == 0.0f) {
-                        bp.set(x, y, 0);
-                    } else {
-                        bp.set(x, y, Math.round((currVal - minVal) * multiplier));
-                    }
+            // computed (en face) slices aren't all cached after the range
+            // pass so we make them again a batch at a time in parallel and
+            // write each batch in order
+            int batchSize = pool.getParallelism();
+            for(int z = 0; z < sizeZ; z += batchSize) {
+                if(this.isCanceled.get()) {
+                    return;
+                }
+                ByteProcessor[] batch = converter.convert(is, z + 1, Math.min(z + batchSize, sizeZ) + 1);
+                for(int i = 0; i < batch.length; i++) {
+                    writer.writeSlice(batch[i]);
                 }
             }
-            
-            newIS.addSlice(z + "", bp);
+        } finally {
+            pool.shutdown();
+            writer.close();
         }
-        
-        return new ImagePlus("", newIS);
     }
 
     @SuppressWarnings("unchecked")
@@ -331,198 +497,88 @@ public class MainDriver {
     private static final double GOLDEN_RATIO = 0.5 * (Math.sqrt(5.0) - 1.0);
     
     /**
-     * Uses TurboReg rigid algorithm to align the given source TIFF against the
-     * target, and returns the resulting image
-     * @param source    the source TIFF
-     * @param target    the target TIFF
-     * @return  the resulting TurboReg aligned image
+     * The number of neighbouring z positions that are registered one after
+     * the other when warm starting
+     */
+    private static final int WARM_START_BLOCK_SIZE = 8;
+    
+    /**
+     * The number of volumes that are read ahead of the one being cropped
+     */
+    private static final int PREFETCH_COUNT = 2;
+    
+    /**
+     * Volumes that are read ahead may use up to this fraction of the
+     * maximum heap size
+     */
+    private static final int PREFETCH_HEAP_FRACTION = 4;
+    
+    /**
+     * Uses TurboReg rigid algorithm to align the given source slice against
+     * the target, and returns the resulting slice
+     * @param turboReg  the TurboReg instance to register with
+     * @param source    the source slice
+     * @param target    the rigid body reference built from the target slice
+     * @param initialSourceLandmarks the source landmarks to start from
+     *          (eg: those found for a neighbouring slice) or null to start
+     *          from the target landmarks
+     * @return  the resulting TurboReg aligned slice
      */
-    private ImagePlus turboAlignSliceRigid(int width, int height, File source, File target) {
-        // build up the registration command that we will use as documented
+    private ImageProcessor turboAlignSliceRigid(
+            TurboReg turboReg,
+            ImageProcessor source,
+            TurboReg.Reference target,
+            double[][] initialSourceLandmarks) {
+        // landmarks follow the TurboReg rigid body conventions documented
         // here: http://bigwww.epfl.ch/thevenaz/turboreg/
-        StringBuilder optionsStr = new StringBuilder();
-        optionsStr.append("-align -file ");
-        optionsStr.append(source.getAbsolutePath());
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(width - 1);
-        optionsStr.append(' ');
-        optionsStr.append(height - 1);
-        optionsStr.append(' ');
-        
-        optionsStr.append("-file ");
-        optionsStr.append(target.getAbsolutePath());
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(width - 1);
-        optionsStr.append(' ');
-        optionsStr.append(height - 1);
-        optionsStr.append(' ');
-        
+        int width = target.getWidth();
+        int height = target.getHeight();
         int halfWidth = width / 2;
         int halfHeight = height / 2;
         int grVal = (int)(0.25 * GOLDEN_RATIO * height);
         
-        optionsStr.append("-rigidBody ");
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(halfHeight);
-        
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(halfHeight);
-        
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(grVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(grVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(height - grVal);
+        double[][] landmarks = new double[][] {
+                {halfWidth, halfHeight},
+                {halfWidth, grVal},
+                {halfWidth, height - grVal}};
         
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(height - grVal);
+        float[] pixels = turboReg.align(
+                source,
+                target,
+                initialSourceLandmarks == null ? landmarks : initialSourceLandmarks,
+                landmarks);
         
-        optionsStr.append(' ');
-        
-        optionsStr.append("-hideOutput");
-        Object turboReg = IJ.runPlugIn("TurboReg_", optionsStr.toString());
-        
-        // use introspection on the plugin result to pull out the image. In
-        // doing so we wrap all exceptions as a runtime exception because the
-        // caller shouldn't have to catch these
-        try {
-            Method method;
-            
-            method = turboReg.getClass().getMethod("getTransformedImage", (Class[])null);
-            ImagePlus imgResult = (ImagePlus)method.invoke(turboReg);
-            imgResult.getStack().deleteLastSlice();
-            
-            return imgResult;
-        } catch(SecurityException ex) {
-            throw new RuntimeException(ex);
-        } catch(NoSuchMethodException ex) {
-            throw new RuntimeException(ex);
-        } catch(IllegalArgumentException ex) {
-            throw new RuntimeException(ex);
-        } catch(IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch(InvocationTargetException ex) {
-            throw new RuntimeException(ex);
-        }
+        return new FloatProcessor(width, height, pixels, null);
     }
     
     /**
-     * Uses TurboReg affine algorithm to align the given source TIFF against the
-     * target, and returns the resulting image
-     * @param source    the source TIFF
-     * @param target    the target TIFF
-     * @return  the resulting TurboReg aligned image
+     * Uses TurboReg affine algorithm to align the given source slice against
+     * the target, and returns the resulting slice
+     * @param source    the source slice
+     * @param target    the target slice
+     * @return  the resulting TurboReg aligned slice
      */
-    private ImagePlus turboAlignSliceAffine(int width, int height, File source, File target) {
-        // build up the registration command that we will use as documented
+    private ImageProcessor turboAlignSliceAffine(ImageProcessor source, ImageProcessor target) {
+        // landmarks follow the TurboReg affine conventions documented
         // here: http://bigwww.epfl.ch/thevenaz/turboreg/
-        StringBuilder optionsStr = new StringBuilder();
-        optionsStr.append("-align -file ");
-        optionsStr.append(source.getAbsolutePath());
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(width - 1);
-        optionsStr.append(' ');
-        optionsStr.append(height - 1);
-        optionsStr.append(' ');
-        
-        optionsStr.append("-file ");
-        optionsStr.append(target.getAbsolutePath());
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(0);
-        optionsStr.append(' ');
-        optionsStr.append(width - 1);
-        optionsStr.append(' ');
-        optionsStr.append(height - 1);
-        optionsStr.append(' ');
-        
+        int width = target.getWidth();
+        int height = target.getHeight();
         int halfWidth = width / 2;
         int grHeightVal = (int)(0.25 * GOLDEN_RATIO * height);
         int grWidthVal = (int)(0.25 * GOLDEN_RATIO * height);
         
-        optionsStr.append("-affine ");
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(grHeightVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(halfWidth);
-        optionsStr.append(' ');
-        optionsStr.append(grHeightVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(grWidthVal);
-        optionsStr.append(' ');
-        optionsStr.append(height - grHeightVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(grWidthVal);
-        optionsStr.append(' ');
-        optionsStr.append(height - grHeightVal);
-        
-        optionsStr.append(' ');
-        optionsStr.append(width - grWidthVal);
-        optionsStr.append(' ');
-        optionsStr.append(height - grHeightVal);
+        double[][] landmarks = new double[][] {
+                {halfWidth, grHeightVal},
+                {grWidthVal, height - grHeightVal},
+                {width - grWidthVal, height - grHeightVal}};
         
-        optionsStr.append(' ');
-        optionsStr.append(width - grWidthVal);
-        optionsStr.append(' ');
-        optionsStr.append(height - grHeightVal);
+        float[] pixels = new TurboReg().align(
+                source,
+                target,
+                TurboReg.AFFINE,
+                landmarks,
+                landmarks);
         
-        optionsStr.append(' ');
-        
-        optionsStr.append("-hideOutput");
-        Object turboReg = IJ.runPlugIn("TurboReg_", optionsStr.toString());
-        
-        // use introspection on the plugin result to pull out the image. In
-        // doing so we wrap all exceptions as a runtime exception because the
-        // caller shouldn't have to catch these
-        try {
-            Method method;
-            
-            method = turboReg.getClass().getMethod("getTransformedImage", (Class[])null);
-            ImagePlus imgResult = (ImagePlus)method.invoke(turboReg);
-            imgResult.getStack().deleteLastSlice();
-            
-            return imgResult;
-        } catch(SecurityException ex) {
-            throw new RuntimeException(ex);
-        } catch(NoSuchMethodException ex) {
-            throw new RuntimeException(ex);
-        } catch(IllegalArgumentException ex) {
-            throw new RuntimeException(ex);
-        } catch(IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch(InvocationTargetException ex) {
-            throw new RuntimeException(ex);
-        }
+        return new FloatProcessor(width, height, pixels, null);
     }
 }
@@ -184,6 +184,19 @@ public class MainWindow extends javax.swing.JFrame
                                 }
 
                                 if(Utilities.isOctReaderInClasspath()) {
+                                    // check the OCT headers up front so that a bad group
+                                    // doesn't fail after its volumes have been decoded
+                                    for(String group : LazyOCTReader.findInconsistentGroups(imgFileGroups, MainWindow.this.docLogger)) {
+                                        MainWindow.this.docLogger.println(
+                                                "skipping image group " + group +
+                                                " since its OCT files don't have matching dimensions");
+                                        imgFileGroups.remove(group);
+                                    }
+                                    if(imgFileGroups.isEmpty()) {
+                                        MainWindow.this.errorOccurred("none of the OCT image groups have matching dimensions");
+                                        return;
+                                    }
+                                    
                                     for(Map.Entry<String, List<File>> imgStackGroup : imgFileGroups.entrySet()) {
                                         Iterator<File> fileIter = imgStackGroup.getValue().iterator();
                                         imgGroups.put(
@@ -210,6 +223,9 @@ public class MainWindow extends javax.swing.JFrame
                                     clipFromBottomPixels,
                                     invertedImageStack,
                                     keepIntermediate,
+                                    MainWindow.this.conf.getRegistrationThreadCount(),
+                                    MainWindow.this.conf.getWarmStartRegistration(),
+                                    MainWindow.this.conf.getOutputCompression(),
                                     MainWindow.this.docLogger,
                                     MainWindow.this.canceling);
                             for(Map.Entry<String, Iterator<ImagePlus>> imgGroup : imgGroups.entrySet()) {
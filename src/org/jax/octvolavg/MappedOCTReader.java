@@ -0,0 +1,644 @@
+package org.jax.octvolavg;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A random access reader for Bioptigen OCT files which is backed by
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}. The header is
+ * parsed once when the reader is constructed and the byte offset of every
+ * frame's sample block is indexed so that individual B-scans can be pulled
+ * on demand without buffering the whole file. Unlike
+ * {@link com.bioptigen.OCT_Reader} this works for files larger than 2 GB.
+ *
+ * The file is walked with the same key/length rules that
+ * {@link com.bioptigen.OCT_Reader#loadOctFile(String, String, boolean, boolean)}
+ * uses so both readers see the same frames. Walking the file touches every
+ * key/length block so the result is saved to a small sidecar index file
+ * next to the OCT file which later readers use instead as long as the OCT
+ * file's size and modification time haven't changed. The index file is a
+ * plain big-endian binary file: a magic number and format version, the OCT
+ * file's size and modification time, the header values and then each table
+ * of offsets preceded by its length. An index file that can't be parsed or
+ * doesn't agree with the OCT file is ignored and rebuilt.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class MappedOCTReader {
+
+    private static final String FRAME_HEADER = "FRAMEHEADER";
+    private static final String FRAME_COUNT = "FRAMECOUNT";
+    private static final String LINE_COUNT = "LINECOUNT";
+    private static final String LINE_LENGTH = "LINELENGTH";
+    private static final String DOPPLER_FLAG = "DOPPLERFLAG";
+    private static final String FRAME_DATA = "FRAMEDATA";
+    private static final String FRAME_DATE_TIME = "FRAMEDATETIME";
+    private static final String FRAME_TIME_STAMP = "FRAMETIMESTAMP";
+    private static final String FRAME_LINES = "FRAMELINES";
+    private static final String FRAME_SAMPLES = "FRAMESAMPLES";
+    private static final String DOPPLER_SAMPLES = "DOPPLERSAMPLES";
+
+    /**
+     * header keys whose value is always read as a single 4 byte word
+     */
+    private static final Set<String> WORD_HEADER_KEYS = new HashSet<String>(Arrays.asList(
+            FRAME_COUNT, "SAMPLEFORMAT", "SCANTYPE", "FRAMESPERVOLUME", "SCANS", "FRAMES", DOPPLER_FLAG));
+
+    /**
+     * header keys whose value is skipped using its data length
+     */
+    private static final Set<String> SIZED_HEADER_KEYS = new HashSet<String>(Arrays.asList(
+            LINE_COUNT, LINE_LENGTH, "DESCRIPTION", "XMIN", "XMAX", "XCAPTION", "YMIN", "YMAX",
+            "YCAPTION", "SCANDEPTH", "SCANLENGTH", "AZSCANLENGTH", "ELSCANLENGTH", "OBJECTDISTANCE",
+            "SCANANGLE", "CONFIG"));
+
+    /**
+     * the sub-frame keys are only part of the header in version 105 files
+     */
+    private static final int SUB_FRAME_VERSION = 105;
+    private static final Set<String> SUB_FRAME_WORD_KEYS = new HashSet<String>(Arrays.asList(
+            "SUBFRAMES", "SUBFRAMELINES"));
+    private static final Set<String> SUB_FRAME_SIZED_KEYS = new HashSet<String>(Arrays.asList(
+            "SUBFRAMEOFFSETS", "SUBFRAMERADII"));
+
+    /**
+     * keys are read into a fixed size buffer by the OCT_Reader so anything
+     * longer than this means we've lost our place in the file
+     */
+    private static final int MAX_KEY_LENGTH = 32;
+
+    /**
+     * how much of the file we map at a time. Frames are served as views into
+     * the current window which is only remapped when a frame falls outside it
+     */
+    private static final int MAP_WINDOW_BYTES = 256 * 1024 * 1024;
+
+    /**
+     * the suffix appended to an OCT file's name to get its index file
+     */
+    public static final String INDEX_FILE_SUFFIX = ".idx";
+
+    /**
+     * the first word of every index file ("OCTI")
+     */
+    private static final int INDEX_FILE_MAGIC = 0x4F435449;
+
+    /**
+     * the version of the index file layout. Index files with any other
+     * version are rebuilt
+     */
+    private static final int INDEX_FILE_VERSION = 1;
+
+    /**
+     * a Doppler block takes up at least its key length and data length words
+     */
+    private static final int MIN_DOPPLER_BLOCK_BYTES = 8;
+
+    private final File octFile;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ByteBuffer wordBuffer = ByteBuffer.allocate(MAX_KEY_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int frameCount = 0;
+    private int lineCount = 0;
+    private int lineLength = 0;
+    private int dopplerFlag = 0;
+
+    private long[] sampleOffsets;
+    private int[] sampleFrameIndices;
+    private long[] dopplerOffsets;
+    private int[] dopplerLengths;
+
+    private long windowStart = -1;
+    private ByteBuffer window = null;
+
+    /**
+     * Open the given OCT file using its index file if it's up to date
+     * @param octFile the file to read
+     * @throws IOException if the file can't be read or isn't laid out like
+     *          an OCT file
+     */
+    public MappedOCTReader(File octFile) throws IOException {
+        this(octFile, true);
+    }
+
+    /**
+     * Open the given OCT file, parse its header and index its frames
+     * @param octFile the file to read
+     * @param useIndexFile  if true the header and frame offsets are taken
+     *          from the file's index file when it is up to date, otherwise
+     *          they are parsed from the OCT file and saved to a new index
+     *          file. If false the index file is neither read nor written
+     * @throws IOException if the file can't be read or isn't laid out like
+     *          an OCT file
+     */
+    public MappedOCTReader(File octFile, boolean useIndexFile) throws IOException {
+        this.octFile = octFile;
+        this.randomAccessFile = new RandomAccessFile(octFile, "r");
+        this.channel = this.randomAccessFile.getChannel();
+        this.fileSize = this.channel.size();
+        try {
+            long lastModified = octFile.lastModified();
+            if(!useIndexFile || !this.readIndexFile(lastModified)) {
+                this.indexFrames(this.parseHeader());
+                if(useIndexFile) {
+                    this.writeIndexFile(lastModified);
+                }
+            }
+        } catch(IOException ex) {
+            this.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the index file that goes with the given OCT file
+     * @param octFile the OCT file
+     * @return the index file
+     */
+    public static File getIndexFile(File octFile) {
+        return new File(octFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Take the header values and frame offsets from the index file. Nothing
+     * is taken unless the whole file parses, agrees with the OCT file and
+     * only holds offsets that lie within the OCT file
+     * @param lastModified the modification time of the OCT file
+     * @return true if the index file exists and matches the OCT file
+     */
+    private boolean readIndexFile(long lastModified) {
+        File indexFile = getIndexFile(this.octFile);
+        if(!indexFile.isFile()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if(in.readInt() != INDEX_FILE_MAGIC || in.readInt() != INDEX_FILE_VERSION) {
+                return false;
+            }
+            if(in.readLong() != this.fileSize || in.readLong() != lastModified) {
+                return false;
+            }
+
+            int frameCount = in.readInt();
+            int lineCount = in.readInt();
+            int lineLength = in.readInt();
+            int dopplerFlag = in.readInt();
+            if(frameCount < 0 || lineCount < 0 || lineLength < 0) {
+                return false;
+            }
+            long sampleBytes = 2L * lineCount * lineLength;
+
+            int sampleCount = in.readInt();
+            if(sampleCount < 0 || sampleCount > frameCount) {
+                return false;
+            }
+            long[] sampleOffsets = new long[sampleCount];
+            int[] sampleFrameIndices = new int[sampleCount];
+            for(int i = 0; i < sampleCount; i++) {
+                sampleOffsets[i] = in.readLong();
+                sampleFrameIndices[i] = in.readInt();
+                if(sampleOffsets[i] < 0 || sampleOffsets[i] + sampleBytes > this.fileSize ||
+                   sampleFrameIndices[i] < 0 || sampleFrameIndices[i] >= frameCount) {
+                    return false;
+                }
+            }
+
+            int dopplerCount = in.readInt();
+            if(dopplerCount < 0 || dopplerCount > this.fileSize / MIN_DOPPLER_BLOCK_BYTES) {
+                return false;
+            }
+            long[] dopplerOffsets = new long[dopplerCount];
+            int[] dopplerLengths = new int[dopplerCount];
+            for(int i = 0; i < dopplerCount; i++) {
+                dopplerOffsets[i] = in.readLong();
+                dopplerLengths[i] = in.readInt();
+                if(dopplerOffsets[i] < 0 || dopplerLengths[i] < 0 ||
+                   dopplerOffsets[i] + dopplerLengths[i] > this.fileSize) {
+                    return false;
+                }
+            }
+
+            if(in.read() != -1) {
+                return false;
+            }
+
+            this.frameCount = frameCount;
+            this.lineCount = lineCount;
+            this.lineLength = lineLength;
+            this.dopplerFlag = dopplerFlag;
+            this.sampleOffsets = sampleOffsets;
+            this.sampleFrameIndices = sampleFrameIndices;
+            this.dopplerOffsets = dopplerOffsets;
+            this.dopplerLengths = dopplerLengths;
+            return true;
+        } catch(IOException ex) {
+            return false;
+        } finally {
+            if(in != null) {
+                try {
+                    in.close();
+                } catch(IOException ex) {
+                    // we've already got what we need from the file
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the header values and frame offsets to the index file. The index
+     * is only an optimization so nothing is written if the OCT file's
+     * directory isn't writable (eg. read-only archive storage) and other
+     * errors are ignored: the next reader just has to parse the OCT file
+     * again
+     * @param lastModified the modification time of the OCT file
+     */
+    private void writeIndexFile(long lastModified) {
+        File indexFile = getIndexFile(this.octFile);
+        File indexDir = indexFile.getAbsoluteFile().getParentFile();
+        if(indexDir == null || !indexDir.canWrite() || (indexFile.exists() && !indexFile.canWrite())) {
+            return;
+        }
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+            out.writeInt(INDEX_FILE_MAGIC);
+            out.writeInt(INDEX_FILE_VERSION);
+            out.writeLong(this.fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(this.frameCount);
+            out.writeInt(this.lineCount);
+            out.writeInt(this.lineLength);
+            out.writeInt(this.dopplerFlag);
+            out.writeInt(this.sampleOffsets.length);
+            for(int i = 0; i < this.sampleOffsets.length; i++) {
+                out.writeLong(this.sampleOffsets[i]);
+                out.writeInt(this.sampleFrameIndices[i]);
+            }
+            out.writeInt(this.dopplerOffsets.length);
+            for(int i = 0; i < this.dopplerOffsets.length; i++) {
+                out.writeLong(this.dopplerOffsets[i]);
+                out.writeInt(this.dopplerLengths[i]);
+            }
+            out.close();
+            out = null;
+        } catch(IOException ex) {
+            // we'll parse the OCT file again next time
+        } finally {
+            if(out != null) {
+                // don't leave a truncated index behind
+                try {
+                    out.close();
+                } catch(IOException ex) {
+                    // the file is deleted either way
+                }
+                indexFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Parse the header keys that we care about
+     * @return the file position where frame data starts
+     * @throws IOException if the header can't be read
+     */
+    private long parseHeader() throws IOException {
+        // magic number followed by the software version. The version is
+        // decoded the way the OCT_Reader decodes it
+        long pos = 4;
+        this.readFully(pos, 2);
+        int version = this.wordBuffer.get(1) & 0xff;
+        pos += 2;
+
+        String key = this.readKey(pos);
+        pos += 4 + this.readInt(pos) + 4;
+        if(!key.equals(FRAME_HEADER)) {
+            throw new IOException(
+                    "expected " + FRAME_HEADER + " at the start of " +
+                    this.octFile.getAbsolutePath() + " but found \"" + key + "\"");
+        }
+
+        while(true) {
+            int keyLength = this.readInt(pos);
+            key = this.readKey(pos);
+            pos += 4 + keyLength;
+
+            boolean subFrames = version == SUB_FRAME_VERSION;
+            if(WORD_HEADER_KEYS.contains(key) || subFrames && SUB_FRAME_WORD_KEYS.contains(key)) {
+                int value = this.readInt(pos + 4);
+                pos += 8;
+                if(key.equals(FRAME_COUNT)) {
+                    this.frameCount = value;
+                } else if(key.equals(DOPPLER_FLAG)) {
+                    this.dopplerFlag = value;
+                }
+            } else if(SIZED_HEADER_KEYS.contains(key) || subFrames && SUB_FRAME_SIZED_KEYS.contains(key)) {
+                int dataLength = this.readInt(pos);
+                if(key.equals(LINE_COUNT)) {
+                    this.lineCount = this.readInt(pos + 4);
+                } else if(key.equals(LINE_LENGTH)) {
+                    this.lineLength = this.readInt(pos + 4);
+                }
+                pos += 4 + dataLength;
+            } else {
+                // the first key we don't recognize ends the header
+                return pos;
+            }
+        }
+    }
+
+    /**
+     * Walk the frames recording where each sample block starts
+     * @param pos the position of the first frame
+     * @throws IOException if the frames can't be read
+     */
+    private void indexFrames(long pos) throws IOException {
+        int sampleBytes = this.getFrameByteCount();
+        List<Long> sampleOffsetList = new ArrayList<Long>(this.frameCount);
+        List<Integer> sampleFrameList = new ArrayList<Integer>(this.frameCount);
+        List<Long> dopplerOffsetList = new ArrayList<Long>();
+        List<Integer> dopplerLengthList = new ArrayList<Integer>();
+
+        frameLoop:
+        for(int frame = 0; frame < this.frameCount; frame++) {
+            if(pos + 4 > this.fileSize) {
+                break;
+            }
+            String key = this.readKey(pos);
+            pos += 4 + this.readInt(pos) + 4;
+            if(!key.equals(FRAME_DATA)) {
+                continue;
+            }
+
+            while(pos + 4 <= this.fileSize) {
+                int keyLength = this.readInt(pos);
+                key = this.readKey(pos);
+                pos += 4 + keyLength;
+
+                if(key.equals(FRAME_DATE_TIME) || key.equals(FRAME_TIME_STAMP)) {
+                    pos += 4 + this.readInt(pos);
+                } else if(key.equals(FRAME_LINES)) {
+                    pos += 8;
+                } else if(key.equals(FRAME_SAMPLES)) {
+                    // the OCT_Reader reads a full frame here whatever the
+                    // data length says
+                    pos += 4;
+                    if(pos + sampleBytes > this.fileSize) {
+                        break frameLoop;
+                    }
+                    sampleOffsetList.add(pos);
+                    sampleFrameList.add(frame);
+                    pos += sampleBytes;
+                } else if(key.equals(DOPPLER_SAMPLES)) {
+                    int dataLength = this.readInt(pos);
+                    pos += 4;
+                    dopplerOffsetList.add(pos);
+                    dopplerLengthList.add(dataLength);
+                    pos += dataLength;
+                } else {
+                    // the first key we don't recognize ends the frame
+                    break;
+                }
+            }
+        }
+
+        this.sampleOffsets = new long[sampleOffsetList.size()];
+        this.sampleFrameIndices = new int[sampleOffsetList.size()];
+        for(int i = 0; i < this.sampleOffsets.length; i++) {
+            this.sampleOffsets[i] = sampleOffsetList.get(i);
+            this.sampleFrameIndices[i] = sampleFrameList.get(i);
+        }
+        this.dopplerOffsets = new long[dopplerOffsetList.size()];
+        this.dopplerLengths = new int[dopplerOffsetList.size()];
+        for(int i = 0; i < this.dopplerOffsets.length; i++) {
+            this.dopplerOffsets[i] = dopplerOffsetList.get(i);
+            this.dopplerLengths[i] = dopplerLengthList.get(i);
+        }
+    }
+
+    private void readFully(long pos, int length) throws IOException {
+        if(pos + length > this.fileSize) {
+            throw new IOException(
+                    "unexpected end of file at byte " + pos + " of " +
+                    this.octFile.getAbsolutePath());
+        }
+        this.wordBuffer.clear();
+        this.wordBuffer.limit(length);
+        while(this.wordBuffer.hasRemaining()) {
+            if(this.channel.read(this.wordBuffer, pos + this.wordBuffer.position()) < 0) {
+                throw new IOException(
+                        "unexpected end of file at byte " + pos + " of " +
+                        this.octFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private int readInt(long pos) throws IOException {
+        this.readFully(pos, 4);
+        return this.wordBuffer.getInt(0);
+    }
+
+    /**
+     * Read the key whose length word starts at the given position
+     * @param pos the position of the key length
+     * @return the key
+     * @throws IOException if the key can't be read
+     */
+    private String readKey(long pos) throws IOException {
+        int keyLength = this.readInt(pos);
+        if(keyLength < 0 || keyLength > MAX_KEY_LENGTH) {
+            throw new IOException(
+                    "bad key length of " + keyLength + " at byte " + pos + " of " +
+                    this.octFile.getAbsolutePath());
+        }
+        this.readFully(pos + 4, keyLength);
+        byte[] keyBytes = new byte[keyLength];
+        this.wordBuffer.flip();
+        this.wordBuffer.get(keyBytes);
+        return new String(keyBytes, "ISO-8859-1").trim();
+    }
+
+    /**
+     * Get a view of the given region of the file. The view's byte order is
+     * little-endian
+     * @param offset the file offset
+     * @param length the byte count
+     * @return the view
+     * @throws IOException if the region can't be mapped
+     */
+    private synchronized ByteBuffer view(long offset, int length) throws IOException {
+        if(this.window == null || offset < this.windowStart ||
+           offset + length > this.windowStart + this.window.capacity()) {
+            long windowLength = Math.min(
+                    Math.max(MAP_WINDOW_BYTES, length),
+                    this.fileSize - offset);
+            this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, windowLength);
+            this.windowStart = offset;
+        }
+
+        ByteBuffer view = this.window.duplicate();
+        view.position((int)(offset - this.windowStart));
+        view.limit(view.position() + length);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Getter for the number of frames declared in the header
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+     * Getter for the number of A-scans in each frame
+     * @return the line count
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * Getter for the number of samples in each A-scan
+     * @return the line length
+     */
+    public int getLineLength() {
+        return this.lineLength;
+    }
+
+    /**
+     * Determine if the header says Doppler data was acquired
+     * @return true if there is Doppler data
+     */
+    public boolean isDoppler() {
+        return this.dopplerFlag != 0;
+    }
+
+    /**
+     * Getter for the number of frames which have intensity samples
+     * @return the number of frames that {@link #readFrame(int)} can read
+     */
+    public int getSampledFrameCount() {
+        return this.sampleOffsets.length;
+    }
+
+    /**
+     * Getter for the number of frames which have Doppler samples
+     * @return the number of frames that {@link #readDopplerFrame(int)} can read
+     */
+    public int getDopplerFrameCount() {
+        return this.dopplerOffsets.length;
+    }
+
+    private int getFrameByteCount() {
+        return this.lineCount * this.lineLength * 2;
+    }
+
+    /**
+     * Get a read-only view of the intensity samples for a frame. The samples
+     * are ordered A-scan by A-scan so sample k of line j is at
+     * j * {@link #getLineLength()} + k
+     * @param z the zero based index of the frame
+     * @return the view
+     * @throws IOException if the frame can't be mapped
+     */
+    public ShortBuffer readFrame(int z) throws IOException {
+        return this.view(this.sampleOffsets[z], this.getFrameByteCount()).asShortBuffer();
+    }
+
+    /**
+     * Get a read-only view of the Doppler samples for a frame
+     * @param z the zero based index of the frame
+     * @return the view
+     * @throws IOException if the frame can't be mapped
+     */
+    public ShortBuffer readDopplerFrame(int z) throws IOException {
+        return this.view(this.dopplerOffsets[z], this.dopplerLengths[z]).asShortBuffer();
+    }
+
+    /**
+     * Decode a frame into an image in the orientation that
+     * {@link com.bioptigen.OCT_Reader} produces. Like that reader only the
+     * high byte of each sample is kept
+     * @param z the zero based index of the frame
+     * @param use8Bit   if true create an 8-bit image (otherwise use 16 bit)
+     * @return the image which is {@link #getLineCount()} wide and
+     *          {@link #getLineLength()} high
+     * @throws IOException if the frame can't be mapped
+     */
+    public ImageProcessor readProcessor(int z, boolean use8Bit) throws IOException {
+        ShortBuffer samples = this.readFrame(z);
+        int sizeX = this.lineCount;
+        int sizeY = this.lineLength;
+        if(use8Bit) {
+            byte[] pixels = new byte[sizeX * sizeY];
+            for(int j = 0; j < sizeX; j++) {
+                int rowOffset = j * sizeY;
+                for(int k = 0; k < sizeY; k++) {
+                    pixels[(sizeY - 1 - k) * sizeX + j] = (byte)(samples.get(rowOffset + k) >>> 8);
+                }
+            }
+            return new ByteProcessor(sizeX, sizeY, pixels, null);
+        } else {
+            short[] pixels = new short[sizeX * sizeY];
+            for(int j = 0; j < sizeX; j++) {
+                int rowOffset = j * sizeY;
+                for(int k = 0; k < sizeY; k++) {
+                    pixels[(sizeY - 1 - k) * sizeX + j] = (short)((samples.get(rowOffset + k) >>> 8) & 0xff);
+                }
+            }
+            return new ShortProcessor(sizeX, sizeY, pixels, null);
+        }
+    }
+
+    /**
+     * Decode every frame into an image stack. Each slice is labeled with its
+     * frame number like the stacks built by {@link com.bioptigen.OCT_Reader}
+     * @param title     the image title
+     * @param use8Bit   if true create an 8-bit image (otherwise use 16 bit)
+     * @return the image
+     * @throws IOException if a frame can't be mapped
+     */
+    public ImagePlus readImage(String title, boolean use8Bit) throws IOException {
+        ImageStack stack = new ImageStack(this.lineCount, this.lineLength);
+        for(int z = 0; z < this.sampleOffsets.length; z++) {
+            stack.addSlice(Integer.toString(this.sampleFrameIndices[z]), this.readProcessor(z, use8Bit));
+        }
+        return new ImagePlus(title, stack);
+    }
+
+    /**
+     * Close the file. Views that were already handed out stay readable
+     * @throws IOException if the close fails
+     */
+    public void close() throws IOException {
+        this.randomAccessFile.close();
+    }
+}
@@ -0,0 +1,329 @@
+package org.jax.octvolavg;
+
+import ij.VirtualStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stack backed by a memory-mapped, uncompressed, single channel 8 or 16
+ * bit TIFF file. The IFD chain is parsed once when the stack is opened and
+ * each page is then served as a view into the mapped file, so pixels are
+ * only copied out of the file when a slice is actually asked for.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class MappedTIFFStack extends VirtualStack {
+
+    private static final int TIFF_MAGIC = 42;
+
+    private static final int IMAGE_WIDTH_TAG = 256;
+    private static final int IMAGE_LENGTH_TAG = 257;
+    private static final int BITS_PER_SAMPLE_TAG = 258;
+    private static final int COMPRESSION_TAG = 259;
+    private static final int PHOTOMETRIC_INTERPRETATION_TAG = 262;
+    private static final int IMAGE_DESCRIPTION_TAG = 270;
+    private static final int STRIP_OFFSETS_TAG = 273;
+    private static final int SAMPLES_PER_PIXEL_TAG = 277;
+    private static final int STRIP_BYTE_COUNTS_TAG = 279;
+    private static final int SAMPLE_FORMAT_TAG = 339;
+
+    private static final int SHORT_TYPE = 3;
+    private static final int LONG_TYPE = 4;
+
+    private static final int NO_COMPRESSION = 1;
+    private static final int WHITE_IS_ZERO = 0;
+    private static final int UNSIGNED_INTEGER_FORMAT = 1;
+
+    /**
+     * ImageJ writes stacks that are too big for regular TIFF as a single IFD
+     * followed by raw pages. The image count in the description tells us
+     * when that has happened
+     */
+    private static final Pattern IMAGEJ_IMAGE_COUNT_PATTERN = Pattern.compile("\\bimages=(\\d+)");
+
+    private final ByteBuffer mappedFile;
+    private final long[] pageOffsets;
+    private final int bytesPerPixel;
+
+    private MappedTIFFStack(
+            int width,
+            int height,
+            int bitDepth,
+            ByteBuffer mappedFile,
+            long[] pageOffsets) {
+        super(width, height, null, null);
+        this.mappedFile = mappedFile;
+        this.pageOffsets = pageOffsets;
+        this.bytesPerPixel = bitDepth / 8;
+        this.setBitDepth(bitDepth);
+    }
+
+    /**
+     * Map the given TIFF file if it is laid out in a way we can serve
+     * directly from the mapping: uncompressed 8 or 16 bit unsigned gray
+     * pages whose strips are contiguous, with every page the same size
+     * and the whole file under 2 GB
+     * @param tiffFile the file to open
+     * @return the stack or null if the file isn't laid out that way (in which
+     *          case it should be read with the ImageJ Opener instead)
+     * @throws IOException if the file can't be read
+     */
+    public static MappedTIFFStack open(File tiffFile) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tiffFile, "r");
+        ByteBuffer mappedFile;
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if(channel.size() > Integer.MAX_VALUE || channel.size() < 8) {
+                return null;
+            }
+            // the mapping stays valid after the file is closed
+            mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if(mappedFile.get(0) == 'I' && mappedFile.get(1) == 'I') {
+            mappedFile.order(ByteOrder.LITTLE_ENDIAN);
+        } else if(mappedFile.get(0) == 'M' && mappedFile.get(1) == 'M') {
+            mappedFile.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return null;
+        }
+        if((mappedFile.getShort(2) & 0xffff) != TIFF_MAGIC) {
+            return null;
+        }
+
+        int width = -1;
+        int height = -1;
+        int bitDepth = -1;
+        String description = null;
+        List<Long> pageOffsetList = new ArrayList<Long>();
+        long ifdOffset = mappedFile.getInt(4) & 0xffffffffL;
+        while(ifdOffset != 0) {
+            if(ifdOffset + 2 > mappedFile.capacity()) {
+                return null;
+            }
+            int ifd = (int)ifdOffset;
+            int entryCount = mappedFile.getShort(ifd) & 0xffff;
+            if(ifd + 2 + entryCount * 12 + 4 > mappedFile.capacity()) {
+                return null;
+            }
+
+            int pageWidth = -1;
+            int pageHeight = -1;
+            int pageBitDepth = 1;
+            int compression = NO_COMPRESSION;
+            int photometric = -1;
+            int samplesPerPixel = 1;
+            int sampleFormat = UNSIGNED_INTEGER_FORMAT;
+            long[] stripOffsets = null;
+            long[] stripByteCounts = null;
+            for(int i = 0; i < entryCount; i++) {
+                int entry = ifd + 2 + i * 12;
+                int tag = mappedFile.getShort(entry) & 0xffff;
+                switch(tag) {
+                    case IMAGE_WIDTH_TAG: pageWidth = (int)tagValues(mappedFile, entry)[0]; break;
+                    case IMAGE_LENGTH_TAG: pageHeight = (int)tagValues(mappedFile, entry)[0]; break;
+                    case BITS_PER_SAMPLE_TAG: pageBitDepth = (int)tagValues(mappedFile, entry)[0]; break;
+                    case COMPRESSION_TAG: compression = (int)tagValues(mappedFile, entry)[0]; break;
+                    case PHOTOMETRIC_INTERPRETATION_TAG: photometric = (int)tagValues(mappedFile, entry)[0]; break;
+                    case SAMPLES_PER_PIXEL_TAG: samplesPerPixel = (int)tagValues(mappedFile, entry)[0]; break;
+                    case SAMPLE_FORMAT_TAG: sampleFormat = (int)tagValues(mappedFile, entry)[0]; break;
+                    case STRIP_OFFSETS_TAG: stripOffsets = tagValues(mappedFile, entry); break;
+                    case STRIP_BYTE_COUNTS_TAG: stripByteCounts = tagValues(mappedFile, entry); break;
+                    case IMAGE_DESCRIPTION_TAG:
+                        if(description == null) {
+                            description = tagString(mappedFile, entry);
+                        }
+                        break;
+                }
+            }
+
+            if(compression != NO_COMPRESSION || photometric == WHITE_IS_ZERO ||
+               samplesPerPixel != 1 || sampleFormat != UNSIGNED_INTEGER_FORMAT ||
+               (pageBitDepth != 8 && pageBitDepth != 16) ||
+               stripOffsets == null || stripByteCounts == null ||
+               stripOffsets.length != stripByteCounts.length) {
+                return null;
+            }
+            if(width == -1) {
+                width = pageWidth;
+                height = pageHeight;
+                bitDepth = pageBitDepth;
+            } else if(width != pageWidth || height != pageHeight || bitDepth != pageBitDepth) {
+                return null;
+            }
+
+            // the strips must run back to back so the page is one view
+            long pageEnd = stripOffsets[0];
+            for(int i = 0; i < stripOffsets.length; i++) {
+                if(stripOffsets[i] != pageEnd) {
+                    return null;
+                }
+                pageEnd += stripByteCounts[i];
+            }
+            long pageBytes = (long)width * height * (bitDepth / 8);
+            if(pageEnd - stripOffsets[0] < pageBytes || stripOffsets[0] + pageBytes > mappedFile.capacity()) {
+                return null;
+            }
+            pageOffsetList.add(stripOffsets[0]);
+
+            ifdOffset = mappedFile.getInt(ifd + 2 + entryCount * 12) & 0xffffffffL;
+        }
+
+        if(pageOffsetList.isEmpty()) {
+            return null;
+        }
+        if(description != null && description.startsWith("ImageJ")) {
+            Matcher imageCountMatcher = IMAGEJ_IMAGE_COUNT_PATTERN.matcher(description);
+            if(imageCountMatcher.find() && Integer.parseInt(imageCountMatcher.group(1)) != pageOffsetList.size()) {
+                return null;
+            }
+        }
+
+        long[] pageOffsets = new long[pageOffsetList.size()];
+        for(int i = 0; i < pageOffsets.length; i++) {
+            pageOffsets[i] = pageOffsetList.get(i);
+        }
+        return new MappedTIFFStack(width, height, bitDepth, mappedFile, pageOffsets);
+    }
+
+    /**
+     * Read the SHORT or LONG values of an IFD entry
+     * @param mappedFile the mapped file
+     * @param entry the position of the IFD entry
+     * @return the values
+     */
+    private static long[] tagValues(ByteBuffer mappedFile, int entry) {
+        int type = mappedFile.getShort(entry + 2) & 0xffff;
+        int count = mappedFile.getInt(entry + 4);
+        int valueSize = type == SHORT_TYPE ? 2 : 4;
+        if(type != SHORT_TYPE && type != LONG_TYPE || count < 1) {
+            return new long[] {-1};
+        }
+
+        // values that fit in four bytes are held in the entry itself
+        int valuePos = count * valueSize <= 4 ? entry + 8 : mappedFile.getInt(entry + 8);
+        if(valuePos < 0 || valuePos + (long)count * valueSize > mappedFile.capacity()) {
+            return new long[] {-1};
+        }
+        long[] values = new long[count];
+        for(int i = 0; i < count; i++) {
+            if(type == SHORT_TYPE) {
+                values[i] = mappedFile.getShort(valuePos + i * 2) & 0xffff;
+            } else {
+                values[i] = mappedFile.getInt(valuePos + i * 4) & 0xffffffffL;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Read the ASCII value of an IFD entry
+     * @param mappedFile the mapped file
+     * @param entry the position of the IFD entry
+     * @return the string
+     */
+    private static String tagString(ByteBuffer mappedFile, int entry) {
+        int count = mappedFile.getInt(entry + 4);
+        int valuePos = count <= 4 ? entry + 8 : mappedFile.getInt(entry + 8);
+        if(count < 0 || valuePos < 0 || valuePos + (long)count > mappedFile.capacity()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(count);
+        for(int i = 0; i < count && mappedFile.get(valuePos + i) != 0; i++) {
+            sb.append((char)(mappedFile.get(valuePos + i) & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get a read-only view of a page's pixels in the file's byte order
+     * @param n the one based slice number
+     * @return the view
+     */
+    public ByteBuffer getPageBuffer(int n) {
+        if(n < 1 || n > this.pageOffsets.length) {
+            throw new IllegalArgumentException("Argument out of range: " + n);
+        }
+        ByteBuffer page = this.mappedFile.duplicate();
+        page.position((int)this.pageOffsets[n - 1]);
+        page.limit(page.position() + this.getWidth() * this.getHeight() * this.bytesPerPixel);
+        return page.slice().order(this.mappedFile.order());
+    }
+
+    /**
+     * Copy the pixels of a page out of the mapped file
+     * @param n the one based slice number
+     * @return a byte[] or short[] holding the pixels
+     */
+    @Override
+    public Object getPixels(int n) {
+        ByteBuffer page = this.getPageBuffer(n);
+        if(this.bytesPerPixel == 1) {
+            byte[] pixels = new byte[this.getWidth() * this.getHeight()];
+            page.get(pixels);
+            return pixels;
+        } else {
+            short[] pixels = new short[this.getWidth() * this.getHeight()];
+            page.asShortBuffer().get(pixels);
+            return pixels;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ImageProcessor getProcessor(int n) {
+        if(this.bytesPerPixel == 1) {
+            return new ByteProcessor(this.getWidth(), this.getHeight(), (byte[])this.getPixels(n), null);
+        } else {
+            return new ShortProcessor(this.getWidth(), this.getHeight(), (short[])this.getPixels(n), null);
+        }
+    }
+
+    /**
+     * The mapped file is read-only
+     */
+    @Override
+    public void setPixels(Object pixels, int n) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The mapped file is read-only
+     */
+    @Override
+    public void deleteSlice(int n) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return this.pageOffsets.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSliceLabel(int n) {
+        return null;
+    }
+}
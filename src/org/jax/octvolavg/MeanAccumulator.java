@@ -0,0 +1,109 @@
+package org.jax.octvolavg;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Keeps a running per-pixel mean of slices so that each slice can be
+ * discarded as soon as it has been added. Like the mean that we take of the
+ * registered repeats, zero valued pixels (which registration uses for the
+ * area that was moved out of frame) are left out of the mean. Sums and
+ * counts are held in flat row-major arrays that match the ImageJ pixel
+ * layout.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class MeanAccumulator {
+
+    private final int width;
+    private final int height;
+    private final float[] sums;
+    private final int[] counts;
+    private int sliceCount = 0;
+
+    /**
+     * Constructor
+     * @param width     the slice width
+     * @param height    the slice height
+     */
+    public MeanAccumulator(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.sums = new float[width * height];
+        this.counts = new int[width * height];
+    }
+
+    /**
+     * Add a slice to the mean
+     * @param ip    the slice
+     */
+    public void add(ImageProcessor ip) {
+        if(ip.getWidth() != this.width || ip.getHeight() != this.height) {
+            throw new IllegalArgumentException(
+                    "expected a " + this.width + "x" + this.height + " slice but got " +
+                    ip.getWidth() + "x" + ip.getHeight());
+        }
+
+        float[] sums = this.sums;
+        int[] counts = this.counts;
+        Object pixels = ip.getPixels();
+        if(pixels instanceof float[]) {
+            float[] floatPixels = (float[])pixels;
+            for(int i = 0; i < floatPixels.length; i++) {
+                float currVal = floatPixels[i];
+                if(currVal != 0.0f) {
+                    sums[i] += currVal;
+                    counts[i]++;
+                }
+            }
+        } else if(pixels instanceof byte[]) {
+            byte[] bytePixels = (byte[])pixels;
+            for(int i = 0; i < bytePixels.length; i++) {
+                int currVal = bytePixels[i] & 0xff;
+                if(currVal != 0) {
+                    sums[i] += currVal;
+                    counts[i]++;
+                }
+            }
+        } else if(pixels instanceof short[]) {
+            short[] shortPixels = (short[])pixels;
+            for(int i = 0; i < shortPixels.length; i++) {
+                int currVal = shortPixels[i] & 0xffff;
+                if(currVal != 0) {
+                    sums[i] += currVal;
+                    counts[i]++;
+                }
+            }
+        } else {
+            for(int i = 0; i < sums.length; i++) {
+                float currVal = ip.getf(i);
+                if(currVal != 0.0f) {
+                    sums[i] += currVal;
+                    counts[i]++;
+                }
+            }
+        }
+        this.sliceCount++;
+    }
+
+    /**
+     * Getter for the number of slices added so far
+     * @return the slice count
+     */
+    public int getSliceCount() {
+        return this.sliceCount;
+    }
+
+    /**
+     * Get the mean of the slices added so far. Pixels that were zero in
+     * every slice come out as NaN
+     * @return the mean
+     */
+    public FloatProcessor getMean() {
+        float[] means = new float[this.sums.length];
+        for(int i = 0; i < means.length; i++) {
+            means[i] = this.sums[i] / this.counts[i];
+        }
+        return new FloatProcessor(this.width, this.height, means, null);
+    }
+}
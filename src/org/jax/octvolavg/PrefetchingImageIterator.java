@@ -0,0 +1,210 @@
+package org.jax.octvolavg;
+
+import ij.ImagePlus;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+/**
+ * Wraps an image iterator (like {@link LazyOCTReader} or
+ * {@link LazyTIFFReader}) so that the next few images are read on a
+ * background thread while the caller is busy with the current one. The
+ * images are handed back in the same order as the wrapped iterator returns
+ * them. Read-ahead stops when either the given number of images or the given
+ * number of bytes are waiting in the queue.
+ *
+ * The wrapped iterator is only ever used from the background thread which is
+ * started by the first call to {@link #hasNext()} or {@link #next()}.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class PrefetchingImageIterator implements Iterator<ImagePlus> {
+
+    /**
+     * While an image is being read the reader holds about as much again as
+     * the image's pixels (eg. the OCT reader's whole-file buffer) on top of
+     * the stack that it is filling
+     */
+    private static final int DECODE_BYTES_FACTOR = 2;
+
+    private final Iterator<ImagePlus> imgs;
+    private final int prefetchCount;
+    private final long byteBudget;
+
+    private final LinkedList<ImagePlus> queue = new LinkedList<ImagePlus>();
+    private long queuedBytes = 0;
+    private long lastImageBytes = 0;
+    private boolean sourceExhausted = false;
+    private boolean closed = false;
+    private Throwable sourceException = null;
+    private Thread prefetchThread = null;
+
+    /**
+     * Constructor
+     * @param imgs          the images to read ahead
+     * @param prefetchCount the maximum number of images to hold in the queue
+     * @param byteBudget    the number of bytes that queued images and the
+     *          image being read ahead may use. We always read at least one
+     *          image ahead even if it is bigger than this
+     */
+    public PrefetchingImageIterator(Iterator<ImagePlus> imgs, int prefetchCount, long byteBudget) {
+        if(prefetchCount < 1) {
+            throw new IllegalArgumentException("the prefetch count must be at least 1");
+        }
+        this.imgs = imgs;
+        this.prefetchCount = prefetchCount;
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Estimate the number of heap bytes used by an image's pixels. Only the
+     * current slice of a virtual stack is counted since the rest aren't
+     * held in memory
+     * @param img the image
+     * @return the estimate
+     */
+    public static long pixelBytes(ImagePlus img) {
+        int bytesPerPixel = img.getBitDepth() == 24 ? 4 : img.getBitDepth() / 8;
+        int sliceCount = img.getStack().isVirtual() ? 1 : img.getStackSize();
+        return (long)img.getWidth() * img.getHeight() * sliceCount * bytesPerPixel;
+    }
+
+    private synchronized void startPrefetching() {
+        if(this.prefetchThread == null) {
+            this.prefetchThread = new Thread("image prefetch") {
+                @Override public void run() {
+                    PrefetchingImageIterator.this.prefetch();
+                }
+            };
+            this.prefetchThread.setDaemon(true);
+            this.prefetchThread.start();
+        }
+    }
+
+    /**
+     * Determine if there is room to read another image. The size of the next
+     * image is assumed to be the same as the last one and it is counted with
+     * what the reader needs while it is still being read
+     * @return true if we can read another image
+     */
+    private boolean hasRoom() {
+        return this.queue.isEmpty() || (
+                this.queue.size() < this.prefetchCount &&
+                this.queuedBytes + DECODE_BYTES_FACTOR * this.lastImageBytes <= this.byteBudget);
+    }
+
+    /**
+     * The background thread's loop which reads images until the wrapped
+     * iterator runs out or we're closed
+     */
+    private void prefetch() {
+        try {
+            while(true) {
+                synchronized(this) {
+                    while(!this.closed && !this.hasRoom()) {
+                        this.wait();
+                    }
+                    if(this.closed) {
+                        return;
+                    }
+                }
+
+                if(!this.imgs.hasNext()) {
+                    break;
+                }
+                ImagePlus img = this.imgs.next();
+
+                synchronized(this) {
+                    if(this.closed) {
+                        return;
+                    }
+                    this.lastImageBytes = pixelBytes(img);
+                    this.queuedBytes += this.lastImageBytes;
+                    this.queue.add(img);
+                    this.notifyAll();
+                }
+            }
+        } catch(InterruptedException ex) {
+            // we've been closed
+        } catch(Throwable ex) {
+            // errors like running out of memory while reading must reach
+            // the caller rather than look like the end of the images
+            synchronized(this) {
+                this.sourceException = ex;
+            }
+        } finally {
+            synchronized(this) {
+                this.sourceExhausted = true;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until an image is queued or there are no more images
+     * @throws RuntimeException if the wrapped iterator failed with a
+     *          runtime or checked exception (checked ones are wrapped)
+     * @throws Error if the wrapped iterator failed with an error
+     */
+    private synchronized void awaitImage() {
+        this.startPrefetching();
+        while(this.queue.isEmpty() && !this.sourceExhausted) {
+            try {
+                this.wait();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+        }
+        if(this.queue.isEmpty() && this.sourceException != null) {
+            if(this.sourceException instanceof RuntimeException) {
+                throw (RuntimeException)this.sourceException;
+            } else if(this.sourceException instanceof Error) {
+                throw (Error)this.sourceException;
+            } else {
+                throw new RuntimeException(this.sourceException);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized boolean hasNext() {
+        this.awaitImage();
+        return !this.queue.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized ImagePlus next() {
+        this.awaitImage();
+        if(this.queue.isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        ImagePlus img = this.queue.removeFirst();
+        this.queuedBytes -= pixelBytes(img);
+        this.notifyAll();
+        return img;
+    }
+
+    /**
+     * Stop reading ahead and drop any queued images. This should be called
+     * if the caller gives up before reaching the end of the images
+     */
+    public synchronized void close() {
+        this.closed = true;
+        this.queue.clear();
+        this.queuedBytes = 0;
+        this.notifyAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
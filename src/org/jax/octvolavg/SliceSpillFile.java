@@ -0,0 +1,163 @@
+package org.jax.octvolavg;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Holds the slices of a volume in a temporary file so that a group of
+ * volumes can be registered without keeping more than the slices that are
+ * being worked on in memory. Slices are written one after the other as raw
+ * pixels so any slice can be read back with a single positional read, and
+ * slices can be read from several threads at once. 8-bit, 16-bit and float
+ * slices keep their type. Anything else is spilled as float.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class SliceSpillFile {
+
+    private final File file;
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int sliceCount;
+    private final int bytesPerPixel;
+
+    /**
+     * Write the given stack to a new temporary file
+     * @param is    the stack to spill
+     * @throws IOException if we fail to write the file
+     */
+    public SliceSpillFile(ImageStack is) throws IOException {
+        this.width = is.getWidth();
+        this.height = is.getHeight();
+        this.sliceCount = is.getSize();
+        Object firstPixels = this.sliceCount == 0 ? null : is.getPixels(1);
+        if(firstPixels instanceof byte[]) {
+            this.bytesPerPixel = 1;
+        } else if(firstPixels instanceof short[]) {
+            this.bytesPerPixel = 2;
+        } else {
+            this.bytesPerPixel = 4;
+        }
+
+        this.file = File.createTempFile("slices", ".raw");
+        this.file.deleteOnExit();
+        this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+        try {
+            ByteBuffer buffer = this.newSliceBuffer();
+            for(int n = 1; n <= this.sliceCount; n++) {
+                buffer.clear();
+                Object pixels = is.getPixels(n);
+                switch(this.bytesPerPixel) {
+                    case 1:
+                        buffer.put((byte[])pixels);
+                        break;
+                    case 2:
+                        buffer.asShortBuffer().put((short[])pixels);
+                        break;
+                    default:
+                        if(pixels instanceof float[]) {
+                            buffer.asFloatBuffer().put((float[])pixels);
+                        } else {
+                            buffer.asFloatBuffer().put(
+                                    (float[])is.getProcessor(n).convertToFloat().getPixels());
+                        }
+                        break;
+                }
+                buffer.rewind();
+                this.writeFully(buffer, this.slicePosition(n));
+            }
+        } catch(IOException ex) {
+            this.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer newSliceBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(this.width * this.height * this.bytesPerPixel);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    private long slicePosition(int n) {
+        return (long)(n - 1) * this.width * this.height * this.bytesPerPixel;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Getter for the number of slices
+     * @return the slice count
+     */
+    public int getSize() {
+        return this.sliceCount;
+    }
+
+    /**
+     * Read a slice back from the file
+     * @param n the one based slice number
+     * @return  a new processor holding the slice
+     * @throws IOException if we fail to read the slice
+     */
+    public ImageProcessor getProcessor(int n) throws IOException {
+        if(n < 1 || n > this.sliceCount) {
+            throw new IllegalArgumentException("Argument out of range: " + n);
+        }
+
+        ByteBuffer buffer = this.newSliceBuffer();
+        long position = this.slicePosition(n);
+        while(buffer.hasRemaining()) {
+            int count = this.channel.read(buffer, position);
+            if(count < 0) {
+                throw new IOException("unexpected end of file reading slice " + n);
+            }
+            position += count;
+        }
+        buffer.rewind();
+
+        int pixelCount = this.width * this.height;
+        switch(this.bytesPerPixel) {
+            case 1: {
+                byte[] pixels = new byte[pixelCount];
+                buffer.get(pixels);
+                return new ByteProcessor(this.width, this.height, pixels, null);
+            }
+            case 2: {
+                short[] pixels = new short[pixelCount];
+                buffer.asShortBuffer().get(pixels);
+                return new ShortProcessor(this.width, this.height, pixels, null);
+            }
+            default: {
+                float[] pixels = new float[pixelCount];
+                buffer.asFloatBuffer().get(pixels);
+                return new FloatProcessor(this.width, this.height, pixels, null);
+            }
+        }
+    }
+
+    /**
+     * Close and delete the file
+     */
+    public void close() {
+        try {
+            this.channel.close();
+        } catch(IOException ex) {
+            // we're only deleting the file so there is nothing to lose
+        }
+        this.file.delete();
+    }
+}
@@ -0,0 +1,664 @@
+package org.jax.octvolavg;
+
+import ij.process.ImageProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a grayscale TIFF stack one slice at a time so that only the slice
+ * being written has to be in memory. Each slice's pixels are appended to the
+ * file followed by its IFD, and the previous IFD's next-IFD offset (or the
+ * header's first-IFD offset) is then patched to point at it. This means
+ * that the file is a readable TIFF holding every slice written so far after
+ * each call to {@link #writeSlice(ImageProcessor)}.
+ *
+ * Classic TIFF uses 32-bit offsets which limits files to 4 GB. Larger stacks
+ * can be written as BigTIFF which uses 64-bit offsets;
+ * {@link #needsBigTIFF(int, int, int, int)} tells us when that is needed.
+ *
+ * Slices can optionally be compressed with LZW or deflate. A compressed slice
+ * is cut into strips which are compressed concurrently on a worker pool and
+ * written to the file in order as they complete.
+ *
+ * @author <A HREF="mailto:keith.sheppard@jax.org">Keith Sheppard</A>
+ */
+public class TIFFStackWriter {
+
+    /**
+     * The strip compression schemes that we can write
+     */
+    public enum Compression {
+        NONE(1),
+        LZW(5),
+        DEFLATE(8);
+
+        private final int tagValue;
+
+        private Compression(int tagValue) {
+            this.tagValue = tagValue;
+        }
+
+        /**
+         * Parse a compression name ignoring case and surrounding whitespace
+         * @param name  the name. Null or empty means {@link #NONE}
+         * @return  the compression
+         * @throws IllegalArgumentException if the name is unknown
+         */
+        public static Compression parse(String name) {
+            if(name == null || name.trim().length() == 0) {
+                return NONE;
+            } else {
+                return valueOf(name.trim().toUpperCase());
+            }
+        }
+    }
+
+    private static final int TIFF_MAGIC = 42;
+    private static final int BIG_TIFF_MAGIC = 43;
+    private static final int HEADER_BYTES = 8;
+    private static final int BIG_TIFF_HEADER_BYTES = 16;
+    private static final int BIG_TIFF_OFFSET_BYTES = 8;
+    private static final long MAX_CLASSIC_OFFSET = 0xffffffffL;
+
+    /**
+     * Compressed slices are cut into strips of about this many uncompressed
+     * bytes
+     */
+    private static final int TARGET_STRIP_BYTES = 64 * 1024;
+
+    private static final int LZW_CLEAR_CODE = 256;
+    private static final int LZW_EOI_CODE = 257;
+    private static final int LZW_FIRST_CODE = 258;
+    private static final int LZW_MIN_CODE_LENGTH = 9;
+    private static final int LZW_MAX_CODE_LENGTH = 12;
+    private static final int LZW_TABLE_LIMIT = 4094;
+    private static final int LZW_HASH_SIZE = 8192;
+
+    private static final int NEW_SUBFILE_TYPE_TAG = 254;
+    private static final int IMAGE_WIDTH_TAG = 256;
+    private static final int IMAGE_LENGTH_TAG = 257;
+    private static final int BITS_PER_SAMPLE_TAG = 258;
+    private static final int COMPRESSION_TAG = 259;
+    private static final int PHOTOMETRIC_INTERPRETATION_TAG = 262;
+    private static final int STRIP_OFFSETS_TAG = 273;
+    private static final int SAMPLES_PER_PIXEL_TAG = 277;
+    private static final int ROWS_PER_STRIP_TAG = 278;
+    private static final int STRIP_BYTE_COUNTS_TAG = 279;
+    private static final int SAMPLE_FORMAT_TAG = 339;
+
+    private static final int SHORT_TYPE = 3;
+    private static final int LONG_TYPE = 4;
+    private static final int LONG8_TYPE = 16;
+
+    private static final int BLACK_IS_ZERO = 1;
+    private static final int FLOATING_POINT_FORMAT = 3;
+
+    private final File tiffFile;
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final boolean bigTIFF;
+    private final Compression compression;
+    private final ForkJoinPool pool;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    private long endOfFile;
+    private long nextIFDOffsetPosition;
+    private int sliceCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Create a classic TIFF file and write its header
+     * @param tiffFile  the file to create. It must not already exist
+     * @param width     the slice width
+     * @param height    the slice height
+     * @param bitDepth  8, 16 or 32 (floating point)
+     * @throws IOException if the file exists or can't be written
+     */
+    public TIFFStackWriter(File tiffFile, int width, int height, int bitDepth) throws IOException {
+        this(tiffFile, width, height, bitDepth, false, Compression.NONE, 1);
+    }
+
+    /**
+     * Create the file and write the TIFF header
+     * @param tiffFile  the file to create. It must not already exist
+     * @param width     the slice width
+     * @param height    the slice height
+     * @param bitDepth  8, 16 or 32 (floating point)
+     * @param bigTIFF   if true write a BigTIFF file rather than a classic one
+     * @param compression   the strip compression to use
+     * @param threadCount   the number of strips to compress concurrently.
+     *          Values less than one mean one per available processor. This
+     *          is ignored if there is no compression
+     * @throws IOException if the file exists or can't be written
+     */
+    public TIFFStackWriter(
+            File tiffFile,
+            int width,
+            int height,
+            int bitDepth,
+            boolean bigTIFF,
+            Compression compression,
+            int threadCount) throws IOException {
+        if(bitDepth != 8 && bitDepth != 16 && bitDepth != 32) {
+            throw new IllegalArgumentException("unsupported bit depth: " + bitDepth);
+        }
+        if(tiffFile.exists()) {
+            throw new IOException(tiffFile.getAbsolutePath() + " already exists");
+        }
+
+        this.tiffFile = tiffFile;
+        this.width = width;
+        this.height = height;
+        this.bitDepth = bitDepth;
+        this.bigTIFF = bigTIFF;
+        this.compression = compression;
+        if(compression == Compression.NONE) {
+            this.pool = null;
+        } else {
+            this.pool = new ForkJoinPool(threadCount < 1 ?
+                    Runtime.getRuntime().availableProcessors() :
+                    threadCount);
+        }
+        this.randomAccessFile = new RandomAccessFile(tiffFile, "rw");
+        this.channel = this.randomAccessFile.getChannel();
+
+        ByteBuffer header;
+        if(bigTIFF) {
+            header = ByteBuffer.allocate(BIG_TIFF_HEADER_BYTES);
+            header.put((byte)'M');
+            header.put((byte)'M');
+            header.putShort((short)BIG_TIFF_MAGIC);
+            header.putShort((short)BIG_TIFF_OFFSET_BYTES);
+            header.putShort((short)0);
+            header.putLong(0L);
+            this.nextIFDOffsetPosition = 8;
+        } else {
+            header = ByteBuffer.allocate(HEADER_BYTES);
+            header.put((byte)'M');
+            header.put((byte)'M');
+            header.putShort((short)TIFF_MAGIC);
+            header.putInt(0);
+            this.nextIFDOffsetPosition = 4;
+        }
+        this.endOfFile = header.capacity();
+        header.flip();
+        this.write(header, 0);
+    }
+
+    private static int entryCount(int bitDepth) {
+        return bitDepth == 32 ? 11 : 10;
+    }
+
+    private static int ifdBytes(int entryCount, boolean bigTIFF) {
+        return bigTIFF ? 8 + entryCount * 20 + 8 : 2 + entryCount * 12 + 4;
+    }
+
+    /**
+     * Estimate the size of an uncompressed stack written as classic TIFF.
+     * Compressed stacks are assumed to be no bigger than this
+     * @param width     the slice width
+     * @param height    the slice height
+     * @param bitDepth  8, 16 or 32
+     * @param sliceCount    the number of slices
+     * @return  the file size in bytes
+     */
+    public static long estimateFileSize(int width, int height, int bitDepth, int sliceCount) {
+        long pixelBytes = (long)width * height * (bitDepth / 8);
+        long sliceBytes = pixelBytes + (pixelBytes & 1) + ifdBytes(entryCount(bitDepth), false);
+        return HEADER_BYTES + sliceBytes * sliceCount;
+    }
+
+    /**
+     * Determine if a stack is too big for a classic TIFF file
+     * @param width     the slice width
+     * @param height    the slice height
+     * @param bitDepth  8, 16 or 32
+     * @param sliceCount    the number of slices
+     * @return  true if the stack has to be written as BigTIFF
+     */
+    public static boolean needsBigTIFF(int width, int height, int bitDepth, int sliceCount) {
+        return estimateFileSize(width, height, bitDepth, sliceCount) > MAX_CLASSIC_OFFSET;
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Append a slice to the stack
+     * @param ip    the slice which must be a ByteProcessor, ShortProcessor or
+     *              FloatProcessor to match the bit depth
+     * @throws IOException if the write fails
+     */
+    public synchronized void writeSlice(ImageProcessor ip) throws IOException {
+        if(this.closed) {
+            throw new IOException(this.tiffFile.getAbsolutePath() + " is already closed");
+        }
+        if(ip.getWidth() != this.width || ip.getHeight() != this.height) {
+            throw new IllegalArgumentException(
+                    "expected a " + this.width + "x" + this.height + " slice but got " +
+                    ip.getWidth() + "x" + ip.getHeight());
+        }
+        Object ipPixels = ip.getPixels();
+        if(!(this.bitDepth == 8 && ipPixels instanceof byte[] ||
+             this.bitDepth == 16 && ipPixels instanceof short[] ||
+             this.bitDepth == 32 && ipPixels instanceof float[])) {
+            throw new IllegalArgumentException(
+                    "expected a " + this.bitDepth + "-bit slice but got a " +
+                    ip.getClass().getSimpleName());
+        }
+
+        int bytesPerPixel = this.bitDepth / 8;
+        int rowsPerStrip = this.height;
+        if(this.compression != Compression.NONE) {
+            rowsPerStrip = Math.max(1, Math.min(
+                    this.height,
+                    TARGET_STRIP_BYTES / (this.width * bytesPerPixel)));
+        }
+        int stripCount = (this.height + rowsPerStrip - 1) / rowsPerStrip;
+        List<Future<byte[]>> strips = this.encodeStrips(ipPixels, rowsPerStrip, stripCount);
+
+        // strips are written in order as soon as each one is ready
+        long[] stripOffsets = new long[stripCount];
+        long[] stripByteCounts = new long[stripCount];
+        long position = this.endOfFile;
+        try {
+            for(int i = 0; i < stripCount; i++) {
+                byte[] strip = strips.get(i).get();
+                if(!this.bigTIFF && position + strip.length > MAX_CLASSIC_OFFSET) {
+                    throw new IOException(
+                            "cannot write more than 4 GB to the classic TIFF file " +
+                            this.tiffFile.getAbsolutePath());
+                }
+                stripOffsets[i] = position;
+                stripByteCounts[i] = strip.length;
+                this.write(ByteBuffer.wrap(strip), position);
+                position += strip.length;
+            }
+        } catch(InterruptedException ex) {
+            throw new IOException(ex);
+        } catch(ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        } finally {
+            for(Future<byte[]> strip : strips) {
+                strip.cancel(true);
+            }
+        }
+
+        // IFDs and the strip offset and count arrays must start on a word
+        // boundary
+        position += position & 1;
+
+        int offsetType = this.bigTIFF ? LONG8_TYPE : LONG_TYPE;
+        ByteBuffer stripOffsetsArray = this.outOfLineArray(offsetType, stripOffsets);
+        long stripOffsetsPosition = position;
+        if(stripOffsetsArray != null) {
+            position += stripOffsetsArray.remaining();
+        }
+        ByteBuffer stripByteCountsArray = this.outOfLineArray(LONG_TYPE, stripByteCounts);
+        long stripByteCountsPosition = position;
+        if(stripByteCountsArray != null) {
+            position += stripByteCountsArray.remaining();
+        }
+
+        long ifdOffset = position;
+        int entryCount = entryCount(this.bitDepth);
+        int ifdBytes = ifdBytes(entryCount, this.bigTIFF);
+        if(!this.bigTIFF && ifdOffset + ifdBytes > MAX_CLASSIC_OFFSET) {
+            throw new IOException(
+                    "cannot write more than 4 GB to the classic TIFF file " +
+                    this.tiffFile.getAbsolutePath());
+        }
+
+        ByteBuffer ifd = ByteBuffer.allocate(ifdBytes);
+        if(this.bigTIFF) {
+            ifd.putLong(entryCount);
+        } else {
+            ifd.putShort((short)entryCount);
+        }
+        this.putEntry(ifd, NEW_SUBFILE_TYPE_TAG, LONG_TYPE, 0);
+        this.putEntry(ifd, IMAGE_WIDTH_TAG, LONG_TYPE, this.width);
+        this.putEntry(ifd, IMAGE_LENGTH_TAG, LONG_TYPE, this.height);
+        this.putEntry(ifd, BITS_PER_SAMPLE_TAG, SHORT_TYPE, this.bitDepth);
+        this.putEntry(ifd, COMPRESSION_TAG, SHORT_TYPE, this.compression.tagValue);
+        this.putEntry(ifd, PHOTOMETRIC_INTERPRETATION_TAG, SHORT_TYPE, BLACK_IS_ZERO);
+        this.putArrayEntry(ifd, STRIP_OFFSETS_TAG, offsetType, stripOffsets, stripOffsetsPosition);
+        this.putEntry(ifd, SAMPLES_PER_PIXEL_TAG, SHORT_TYPE, 1);
+        this.putEntry(ifd, ROWS_PER_STRIP_TAG, LONG_TYPE, rowsPerStrip);
+        this.putArrayEntry(ifd, STRIP_BYTE_COUNTS_TAG, LONG_TYPE, stripByteCounts, stripByteCountsPosition);
+        if(this.bitDepth == 32) {
+            this.putEntry(ifd, SAMPLE_FORMAT_TAG, SHORT_TYPE, FLOATING_POINT_FORMAT);
+        }
+        long nextIFDOffsetPosition = ifdOffset + ifd.position();
+        if(this.bigTIFF) {
+            ifd.putLong(0L);
+        } else {
+            ifd.putInt(0);
+        }
+
+        if(stripOffsetsArray != null) {
+            this.write(stripOffsetsArray, stripOffsetsPosition);
+        }
+        if(stripByteCountsArray != null) {
+            this.write(stripByteCountsArray, stripByteCountsPosition);
+        }
+        ifd.flip();
+        this.write(ifd, ifdOffset);
+
+        // only link the new IFD in once it has been fully written
+        ByteBuffer link;
+        if(this.bigTIFF) {
+            link = ByteBuffer.allocate(8);
+            link.putLong(ifdOffset);
+        } else {
+            link = ByteBuffer.allocate(4);
+            link.putInt((int)ifdOffset);
+        }
+        link.flip();
+        this.write(link, this.nextIFDOffsetPosition);
+
+        this.nextIFDOffsetPosition = nextIFDOffsetPosition;
+        this.endOfFile = ifdOffset + ifdBytes;
+        this.sliceCount++;
+    }
+
+    /**
+     * Start encoding the strips of a slice. Compressed strips are handed to
+     * the pool while uncompressed strips are encoded right away
+     * @param ipPixels      the slice pixels
+     * @param rowsPerStrip  the number of rows in every strip but the last
+     * @param stripCount    the number of strips
+     * @return  the encoded strips in order
+     */
+    private List<Future<byte[]>> encodeStrips(
+            final Object ipPixels,
+            final int rowsPerStrip,
+            int stripCount) {
+        List<Future<byte[]>> strips = new ArrayList<Future<byte[]>>(stripCount);
+        for(int i = 0; i < stripCount; i++) {
+            final int firstRow = i * rowsPerStrip;
+            final int rowCount = Math.min(rowsPerStrip, this.height - firstRow);
+            Callable<byte[]> encodeStrip = new Callable<byte[]>() {
+                public byte[] call() {
+                    byte[] strip = TIFFStackWriter.this.stripBytes(ipPixels, firstRow, rowCount);
+                    switch(TIFFStackWriter.this.compression) {
+                        case LZW: return lzwCompress(strip);
+                        case DEFLATE: return deflate(strip);
+                        default: return strip;
+                    }
+                }
+            };
+            if(this.pool == null) {
+                FutureTask<byte[]> strip = new FutureTask<byte[]>(encodeStrip);
+                strip.run();
+                strips.add(strip);
+            } else {
+                strips.add(this.pool.submit(encodeStrip));
+            }
+        }
+        return strips;
+    }
+
+    /**
+     * Get the big-endian bytes of a run of rows
+     * @param ipPixels  the slice pixels
+     * @param firstRow  the first row to get
+     * @param rowCount  the number of rows
+     * @return  the bytes
+     */
+    private byte[] stripBytes(Object ipPixels, int firstRow, int rowCount) {
+        int start = firstRow * this.width;
+        int length = rowCount * this.width;
+        if(ipPixels instanceof byte[]) {
+            if(start == 0 && length == ((byte[])ipPixels).length) {
+                // strips are only ever read so we can use the pixels as is
+                return (byte[])ipPixels;
+            } else {
+                return Arrays.copyOfRange((byte[])ipPixels, start, start + length);
+            }
+        } else if(ipPixels instanceof short[]) {
+            ByteBuffer strip = ByteBuffer.allocate(length * 2);
+            strip.asShortBuffer().put((short[])ipPixels, start, length);
+            return strip.array();
+        } else {
+            ByteBuffer strip = ByteBuffer.allocate(length * 4);
+            strip.asFloatBuffer().put((float[])ipPixels, start, length);
+            return strip.array();
+        }
+    }
+
+    /**
+     * Compress using deflate (zlib format) as TIFF compression 8 expects
+     * @param data  the data to compress
+     * @return  the compressed data
+     */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8 * 1024];
+            while(!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Packs variable length codes most significant bit first
+     */
+    private static class CodeWriter {
+        private final ByteArrayOutputStream out;
+        private int bitBuffer = 0;
+        private int bitCount = 0;
+
+        public CodeWriter(int expectedLength) {
+            this.out = new ByteArrayOutputStream(expectedLength);
+        }
+
+        public void write(int code, int codeLength) {
+            this.bitBuffer = (this.bitBuffer << codeLength) | code;
+            this.bitCount += codeLength;
+            while(this.bitCount >= 8) {
+                this.bitCount -= 8;
+                this.out.write((this.bitBuffer >>> this.bitCount) & 0xff);
+            }
+        }
+
+        public byte[] toByteArray() {
+            if(this.bitCount > 0) {
+                this.out.write((this.bitBuffer << (8 - this.bitCount)) & 0xff);
+                this.bitCount = 0;
+            }
+            return this.out.toByteArray();
+        }
+    }
+
+    /**
+     * Compress using TIFF flavoured LZW. The code length grows one code
+     * earlier than the table needs it to (the "early change" that TIFF
+     * readers expect)
+     * @param data  the data to compress
+     * @return  the compressed data
+     */
+    private static byte[] lzwCompress(byte[] data) {
+        CodeWriter out = new CodeWriter(data.length / 2 + 64);
+
+        // the string table is a hash from (prefix code, next byte) to code
+        int[] hashKeys = new int[LZW_HASH_SIZE];
+        short[] hashCodes = new short[LZW_HASH_SIZE];
+        Arrays.fill(hashKeys, -1);
+
+        int codeLength = LZW_MIN_CODE_LENGTH;
+        int nextCode = LZW_FIRST_CODE;
+        out.write(LZW_CLEAR_CODE, codeLength);
+
+        if(data.length > 0) {
+            int prefix = data[0] & 0xff;
+            for(int i = 1; i < data.length; i++) {
+                int curr = data[i] & 0xff;
+                int key = (prefix << 8) | curr;
+                int hash = (key * 0x9E3779B1 >>> 19) & (LZW_HASH_SIZE - 1);
+                while(hashKeys[hash] != -1 && hashKeys[hash] != key) {
+                    hash = (hash + 1) & (LZW_HASH_SIZE - 1);
+                }
+
+                if(hashKeys[hash] == key) {
+                    prefix = hashCodes[hash];
+                } else {
+                    out.write(prefix, codeLength);
+                    hashKeys[hash] = key;
+                    hashCodes[hash] = (short)nextCode;
+                    nextCode++;
+                    if(nextCode == LZW_TABLE_LIMIT) {
+                        out.write(LZW_CLEAR_CODE, codeLength);
+                        Arrays.fill(hashKeys, -1);
+                        nextCode = LZW_FIRST_CODE;
+                        codeLength = LZW_MIN_CODE_LENGTH;
+                    } else if(nextCode == 1 << codeLength) {
+                        codeLength++;
+                    }
+                    prefix = curr;
+                }
+            }
+            out.write(prefix, codeLength);
+
+            // the reader adds a table entry for the last code so the end
+            // code may have to be longer
+            nextCode++;
+            if(nextCode == 1 << codeLength && codeLength < LZW_MAX_CODE_LENGTH) {
+                codeLength++;
+            }
+        }
+        out.write(LZW_EOI_CODE, codeLength);
+
+        return out.toByteArray();
+    }
+
+    private static int typeBytes(int type) {
+        switch(type) {
+            case SHORT_TYPE: return 2;
+            case LONG_TYPE: return 4;
+            default: return 8;
+        }
+    }
+
+    /**
+     * Get the array values that have to be written outside of the IFD
+     * @param type      the value type
+     * @param values    the values
+     * @return  the array ready to be written or null if the values fit in the
+     *          IFD entry's value field
+     */
+    private ByteBuffer outOfLineArray(int type, long[] values) {
+        int typeBytes = typeBytes(type);
+        if(values.length * typeBytes <= (this.bigTIFF ? 8 : 4)) {
+            return null;
+        } else {
+            ByteBuffer array = ByteBuffer.allocate(values.length * typeBytes);
+            for(long value : values) {
+                putValue(array, type, value);
+            }
+            array.flip();
+            return array;
+        }
+    }
+
+    private static void putValue(ByteBuffer buffer, int type, long value) {
+        if(type == SHORT_TYPE) {
+            buffer.putShort((short)value);
+        } else if(type == LONG_TYPE) {
+            buffer.putInt((int)value);
+        } else {
+            buffer.putLong(value);
+        }
+    }
+
+    /**
+     * Write a single valued IFD entry
+     */
+    private void putEntry(ByteBuffer ifd, int tag, int type, long value) {
+        this.putArrayEntry(ifd, tag, type, new long[] {value}, 0L);
+    }
+
+    /**
+     * Write an IFD entry. Values that fit are left justified in the value
+     * field as the TIFF spec requires, otherwise the field holds the array
+     * position
+     * @param ifd           the IFD to write to
+     * @param tag           the tag
+     * @param type          the value type
+     * @param values        the values
+     * @param arrayPosition where the values are written if they don't fit in
+     *                      the value field
+     */
+    private void putArrayEntry(ByteBuffer ifd, int tag, int type, long[] values, long arrayPosition) {
+        ifd.putShort((short)tag);
+        ifd.putShort((short)type);
+        if(this.bigTIFF) {
+            ifd.putLong(values.length);
+        } else {
+            ifd.putInt(values.length);
+        }
+
+        int valueFieldBytes = this.bigTIFF ? 8 : 4;
+        int valueStart = ifd.position();
+        if(values.length * typeBytes(type) <= valueFieldBytes) {
+            for(long value : values) {
+                putValue(ifd, type, value);
+            }
+            while(ifd.position() < valueStart + valueFieldBytes) {
+                ifd.put((byte)0);
+            }
+        } else if(this.bigTIFF) {
+            ifd.putLong(arrayPosition);
+        } else {
+            ifd.putInt((int)arrayPosition);
+        }
+    }
+
+    /**
+     * Getter for the number of slices written so far
+     * @return the slice count
+     */
+    public synchronized int getSliceCount() {
+        return this.sliceCount;
+    }
+
+    /**
+     * Close the file. Calling this more than once has no effect
+     * @throws IOException if the close fails
+     */
+    public synchronized void close() throws IOException {
+        if(!this.closed) {
+            this.closed = true;
+            if(this.pool != null) {
+                this.pool.shutdown();
+            }
+            this.randomAccessFile.close();
+        }
+    }
+}
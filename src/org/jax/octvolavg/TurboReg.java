@@ -60,6 +60,7 @@ import ij.plugin.PlugIn;
 import ij.plugin.filter.Analyzer;
 import ij.process.FloatProcessor;
 import ij.process.ImageConverter;
+import ij.process.ImageProcessor;
 import ij.process.StackConverter;
 
 // Java 1.1
@@ -108,6 +109,13 @@ import java.io.StreamTokenizer;
 import java.io.StringReader;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /*====================================================================
 |	TurboReg_
@@ -124,6 +132,44 @@ public class TurboReg
 
 { /* class TurboReg_ */
 
+/*....................................................................
+	public variables
+....................................................................*/
+/*********************************************************************
+ Transformation code for <code>align</code>; see
+ <code>turboRegDialog.AFFINE</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public static final int AFFINE = turboRegDialog.AFFINE;
+
+/*********************************************************************
+ Transformation code for <code>align</code>; see
+ <code>turboRegDialog.BILINEAR</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public static final int BILINEAR = turboRegDialog.BILINEAR;
+
+/*********************************************************************
+ Transformation code for <code>align</code>; see
+ <code>turboRegDialog.RIGID_BODY</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public static final int RIGID_BODY = turboRegDialog.RIGID_BODY;
+
+/*********************************************************************
+ Transformation code for <code>align</code>; see
+ <code>turboRegDialog.SCALED_ROTATION</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public static final int SCALED_ROTATION = turboRegDialog.SCALED_ROTATION;
+
+/*********************************************************************
+ Transformation code for <code>align</code>; see
+ <code>turboRegDialog.TRANSLATION</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public static final int TRANSLATION = turboRegDialog.TRANSLATION;
+
 /*....................................................................
 	private variables
 ....................................................................*/
@@ -131,7 +177,12 @@ private double[][] sourcePoints =
 	new double[turboRegPointHandler.NUM_POINTS][2];
 private double[][] targetPoints =
 	new double[turboRegPointHandler.NUM_POINTS][2];
+private double[][] transformationMatrix = null;
+private int optimizerIterationCount = 0;
+private boolean parallelReduction = false;
 private ImagePlus transformedImage = null;
+private final ExecutorService executor;
+private final turboRegProgressBar progressBar = new turboRegProgressBar();
 
 /*....................................................................
 	PlugIn methods
@@ -788,9 +839,179 @@ public void run (
 	}
 } /* end run */
 
+/*....................................................................
+	constructors
+....................................................................*/
+/*********************************************************************
+ Each pyramid precomputation of <code>align</code> and
+ <code>createReference</code> runs in a thread of its own.
+ ********************************************************************/
+public TurboReg (
+) {
+	this(null);
+} /* end TurboReg */
+
+/*********************************************************************
+ The pyramid precomputations of <code>align</code> and
+ <code>createReference</code> are submitted to <code>executor</code>.
+ When <code>executor</code> is a <code>ForkJoinPool</code>, it is safe
+ to call <code>align</code> from one of its own workers.
+ @param executor Executor shared by the precomputations, or
+ <code>null</code> for one thread per precomputation.
+ ********************************************************************/
+public TurboReg (
+	final ExecutorService executor
+) {
+	this.executor = executor;
+} /* end TurboReg */
+
 /*....................................................................
 	public methods
 ....................................................................*/
+/*********************************************************************
+ Align the <code>source</code> image to the <code>target</code> image
+ without going through files, windows, or the command line. Both images
+ are used in full (no cropping) and without masks. The landmarks are
+ given in the same units as for <code>run</code>; the number of
+ <i>useful</i> landmarks depends on the transformation. On return, the
+ refined landmarks are available from <code>getSourcePoints</code> and
+ <code>getTargetPoints</code>, and the matrix that maps target
+ coordinates onto source coordinates is available from
+ <code>getTransformationMatrix</code>. No result table is filled and no
+ image is displayed.
+ @param source Grayscale image to be aligned.
+ @param target Grayscale reference image.
+ @param transformation One of <code>TRANSLATION</code>,
+ <code>RIGID_BODY</code>, <code>SCALED_ROTATION</code>,
+ <code>AFFINE</code>, or <code>BILINEAR</code>.
+ @param sourcePoints Initial source landmarks.
+ @param targetPoints Target landmarks.
+ @return The transformed source samples, in row-major order, of the
+ same size as <code>target</code>.
+ @see TurboReg#getSourcePoints
+ @see TurboReg#getTargetPoints
+ @see TurboReg#getTransformationMatrix
+ ********************************************************************/
+public float[] align (
+	final ImageProcessor source,
+	final ImageProcessor target,
+	final int transformation,
+	final double[][] sourcePoints,
+	final double[][] targetPoints
+) {
+	final int pyramidDepth = getPyramidDepth(
+		source.getWidth(), source.getHeight(),
+		target.getWidth(), target.getHeight());
+	return(align(source,
+		createReference(target, transformation, pyramidDepth),
+		sourcePoints, targetPoints));
+} /* end align */
+
+/*********************************************************************
+ Align the <code>source</code> image to a precomputed reference. This
+ behaves as <code>align(ImageProcessor, ImageProcessor, ...)</code>,
+ except that the target pyramids are taken from <code>reference</code>
+ instead of being recomputed, which pays off when many images are
+ aligned to the same target.
+ @param source Grayscale image to be aligned.
+ @param reference Target pyramids, as returned by
+ <code>createReference</code>.
+ @param sourcePoints Initial source landmarks.
+ @param targetPoints Target landmarks.
+ @return The transformed source samples, in row-major order, of the
+ same size as the reference.
+ @see TurboReg#createReference
+ ********************************************************************/
+public float[] align (
+	final ImageProcessor source,
+	final Reference reference,
+	final double[][] sourcePoints,
+	final double[][] targetPoints
+) {
+	final int transformation = reference.getTransformation();
+	final int pyramidDepth = reference.getPyramidDepth();
+	if (pyramidDepth != getPyramidDepth(
+		source.getWidth(), source.getHeight(),
+		reference.getWidth(), reference.getHeight())) {
+		throw new IllegalArgumentException(
+			"source size " + source.getWidth() + "x" + source.getHeight()
+			+ " is incompatible with the reference pyramid");
+	}
+	final ImagePlus sourceImp = new ImagePlus("source", source);
+	if ((sourceImp.getType() != ImagePlus.GRAY16)
+		&& (sourceImp.getType() != ImagePlus.GRAY32)
+		&& (sourceImp.getType() != ImagePlus.GRAY8)) {
+		throw new IllegalArgumentException(
+			"source should be grayscale (8, 16, or 32 bit)");
+	}
+	final turboRegImage sourceImg = new turboRegImage(
+		sourceImp, transformation, false, progressBar);
+	sourceImg.setPyramidDepth(pyramidDepth);
+	final Future<?> sourceImgTask = submitTask(sourceImg);
+	final turboRegMask sourceMsk = new turboRegMask(sourceImp, progressBar);
+	sourceMsk.clearMask();
+	sourceMsk.setPyramidDepth(pyramidDepth);
+	final Future<?> sourceMskTask = submitTask(sourceMsk);
+	final turboRegPointHandler sourcePh = new turboRegPointHandler(
+		transformation, sourceImp);
+	final turboRegPointHandler targetPh = new turboRegPointHandler(
+		transformation, new ImagePlus("target", reference.getProcessor()));
+	sourcePh.setPoints(sourcePoints);
+	targetPh.setPoints(targetPoints);
+	waitForTask(sourceMskTask);
+	waitForTask(sourceImgTask);
+	final turboRegImage targetImg = reference.getImage();
+	final turboRegTransform regTransform = new turboRegTransform(
+		sourceImg, sourceMsk, sourcePh,
+		targetImg, reference.getMask(), targetPh,
+		transformation, false, false, progressBar);
+	regTransform.setParallelReduction(parallelReduction);
+	regTransform.doRegistration();
+	final float[] pixels = regTransform.doFinalTransform(
+		sourceImg, sourcePh, targetImg, targetPh, transformation, false);
+	this.sourcePoints = sourcePh.getPoints();
+	this.targetPoints = targetPh.getPoints();
+	transformationMatrix = regTransform.getTransformationMatrix();
+	optimizerIterationCount = regTransform.getOptimizerIterationCount();
+	return(pixels);
+} /* end align */
+
+/*********************************************************************
+ Precompute the target pyramids of <code>target</code> so that they can
+ be shared by several calls to <code>align</code>. The pyramid depth is
+ chosen for sources of the same size as <code>target</code>.
+ @param target Grayscale reference image.
+ @param transformation One of <code>TRANSLATION</code>,
+ <code>RIGID_BODY</code>, <code>SCALED_ROTATION</code>,
+ <code>AFFINE</code>, or <code>BILINEAR</code>.
+ @see TurboReg#align(ImageProcessor, Reference, double[][],
+ double[][])
+ ********************************************************************/
+public Reference createReference (
+	final ImageProcessor target,
+	final int transformation
+) {
+	final int pyramidDepth = getPyramidDepth(
+		target.getWidth(), target.getHeight(),
+		target.getWidth(), target.getHeight());
+	return(createReference(target, transformation, pyramidDepth));
+} /* end createReference */
+
+/*********************************************************************
+ Accessor method for the number of Marquardt-Levenberg iterations
+ performed by the last call to <code>align</code>, summed over all
+ pyramid levels. Whichever optimizer runs at a level, each of its
+ iterations evaluates the criterion once, and the evaluations of the
+ starting and of the final landmarks count as iterations too. Starting
+ <code>align</code> from landmarks that are close to the solution
+ lowers this number.
+ @see TurboReg#align
+ ********************************************************************/
+public int getOptimizerIterationCount (
+) {
+	return(optimizerIterationCount);
+} /* end getOptimizerIterationCount */
+
 /*********************************************************************
  Accessor method for the <code>(double[][])sourcePoints</code> variable.
  This variable is valid only after a call to <code>run</code> with the
@@ -845,6 +1066,19 @@ public double[][] getTargetPoints (
 	return(targetPoints);
 } /* end getTargetPoints */
 
+/*********************************************************************
+ Accessor method for the <code>(double[][])transformationMatrix</code>
+ variable. This variable is valid only after a call to <code>align</code>
+ has been issued. What is returned is the matrix that maps target
+ coordinates onto source coordinates; its layout depends on the
+ transformation, as in <code>turboRegTransform</code>.
+ @see TurboReg#align
+ ********************************************************************/
+public double[][] getTransformationMatrix (
+) {
+	return(transformationMatrix);
+} /* end getTransformationMatrix */
+
 /*********************************************************************
  Accessor method for the <code>(ImagePlus)transformedImage</code>
  variable. This variable is valid only after a call to <code>run</code>
@@ -859,6 +1093,21 @@ public ImagePlus getTransformedImage (
 	return(transformedImage);
 } /* end getTransformedImage */
 
+/*********************************************************************
+ Sum the rows of the image concurrently when evaluating the rigid-body
+ and translation criteria of the registrations that follow, with
+ <code>align</code> or <code>run</code>. This helps when a single large
+ image is being registered; it does not when many small registrations
+ already run concurrently. The result does not depend on the number
+ of threads, but it may differ slightly from the sequential one.
+ @param parallelReduction Sum the rows concurrently.
+ ********************************************************************/
+public void setParallelReduction (
+	final boolean parallelReduction
+) {
+	this.parallelReduction = parallelReduction;
+} /* end setParallelReduction */
+
 /*....................................................................
 	private methods
 ....................................................................*/
@@ -987,6 +1236,7 @@ private ImagePlus alignImages (
 	final turboRegFinalAction finalAction = new turboRegFinalAction(
 		sourceImg, sourceMsk, sourcePh,
 		targetImg, targetMsk, targetPh, transformation);
+	finalAction.setParallelReduction(parallelReduction);
 	finalAction.getThread().start();
 	try {
 		finalAction.getThread().join();
@@ -1086,6 +1336,46 @@ private ImagePlus[] createAdmissibleImageList (
 	return(admissibleImageList);
 } /* end createAdmissibleImageList */
 
+/*------------------------------------------------------------------*/
+private Reference createReference (
+	final ImageProcessor target,
+	final int transformation,
+	final int pyramidDepth
+) {
+	switch (transformation) {
+		case turboRegDialog.TRANSLATION:
+		case turboRegDialog.RIGID_BODY:
+		case turboRegDialog.SCALED_ROTATION:
+		case turboRegDialog.AFFINE:
+		case turboRegDialog.BILINEAR: {
+			break;
+		}
+		default: {
+			throw new IllegalArgumentException(
+				"Invalid transformation: " + transformation);
+		}
+	}
+	final ImagePlus targetImp = new ImagePlus("target", target);
+	if ((targetImp.getType() != ImagePlus.GRAY16)
+		&& (targetImp.getType() != ImagePlus.GRAY32)
+		&& (targetImp.getType() != ImagePlus.GRAY8)) {
+		throw new IllegalArgumentException(
+			"target should be grayscale (8, 16, or 32 bit)");
+	}
+	final turboRegImage targetImg = new turboRegImage(
+		targetImp, transformation, true, progressBar);
+	targetImg.setPyramidDepth(pyramidDepth);
+	final Future<?> targetImgTask = submitTask(targetImg);
+	final turboRegMask targetMsk = new turboRegMask(targetImp, progressBar);
+	targetMsk.clearMask();
+	targetMsk.setPyramidDepth(pyramidDepth);
+	final Future<?> targetMskTask = submitTask(targetMsk);
+	waitForTask(targetMskTask);
+	waitForTask(targetImgTask);
+	return(new Reference(target, targetImg, targetMsk,
+		transformation, pyramidDepth));
+} /* end createReference */
+
 /*------------------------------------------------------------------*/
 private void dumpSyntax (
 	final String options
@@ -1236,6 +1526,21 @@ private int getTransformation (
 	}
 } /* end getTransformation */
 
+/*------------------------------------------------------------------*/
+private Future<?> submitTask (
+	final Runnable precomputation
+) {
+	if (executor == null) {
+		final FutureTask<Object> task = new FutureTask<Object>(
+			precomputation, null);
+		final Thread t = new Thread(task);
+		t.setDaemon(true);
+		t.start();
+		return(task);
+	}
+	return(executor.submit(precomputation));
+} /* end submitTask */
+
 /*------------------------------------------------------------------*/
 private ImagePlus transformImage (
 	final ImagePlus source,
@@ -1288,8 +1593,275 @@ private ImagePlus transformImage (
 	return(transformedImage);
 } /* end transformImage */
 
+/*------------------------------------------------------------------*/
+private void waitForTask (
+	final Future<?> task
+) {
+	try {
+		task.get();
+	} catch (InterruptedException e) {
+		IJ.log(
+			"Unexpected interruption exception " + e.getMessage());
+		Thread.currentThread().interrupt();
+	} catch (ExecutionException e) {
+		if (e.getCause() instanceof RuntimeException) {
+			throw((RuntimeException)e.getCause());
+		}
+		throw(new RuntimeException(e.getCause()));
+	}
+} /* end waitForTask */
+
+/*....................................................................
+	nested classes
+....................................................................*/
+/*********************************************************************
+ This class holds the precomputed target data of a registration: the
+ image pyramid and the (cleared) mask pyramid. It is built once and can
+ then be shared by any number of calls to
+ <code>TurboReg.align(ImageProcessor, Reference, ...)</code>,
+ possibly concurrently, since <code>turboRegTransform</code> only reads
+ from it.
+ ********************************************************************/
+public static class Reference
+
+{ /* class Reference */
+
+/*....................................................................
+	private variables
+....................................................................*/
+private final ImageProcessor target;
+private final turboRegImage targetImg;
+private final turboRegMask targetMsk;
+private final int pyramidDepth;
+private final int transformation;
+
+/*....................................................................
+	constructors
+....................................................................*/
+/*********************************************************************
+ Keep the precomputed target data. The pyramids of
+ <code>targetImg</code> and <code>targetMsk</code> must be complete.
+ @param target Grayscale reference image.
+ @param targetImg Target image pyramid.
+ @param targetMsk Target mask pyramid.
+ @param transformation Transformation code.
+ @param pyramidDepth Depth of the pyramids.
+ @see TurboReg#createReference
+ ********************************************************************/
+Reference (
+	final ImageProcessor target,
+	final turboRegImage targetImg,
+	final turboRegMask targetMsk,
+	final int transformation,
+	final int pyramidDepth
+) {
+	this.target = target;
+	this.targetImg = targetImg;
+	this.targetMsk = targetMsk;
+	this.transformation = transformation;
+	this.pyramidDepth = pyramidDepth;
+} /* end Reference */
+
+/*....................................................................
+	public methods
+....................................................................*/
+/*********************************************************************
+ Return the full-size image height.
+ ********************************************************************/
+public int getHeight (
+) {
+	return(targetImg.getHeight());
+} /* end getHeight */
+
+/*********************************************************************
+ Return the target image pyramid.
+ ********************************************************************/
+turboRegImage getImage (
+) {
+	return(targetImg);
+} /* end getImage */
+
+/*********************************************************************
+ Return the target mask pyramid.
+ ********************************************************************/
+turboRegMask getMask (
+) {
+	return(targetMsk);
+} /* end getMask */
+
+/*********************************************************************
+ Return the reference image as it was given to the constructor.
+ ********************************************************************/
+public ImageProcessor getProcessor (
+) {
+	return(target);
+} /* end getProcessor */
+
+/*********************************************************************
+ Return the depth of the pyramids.
+ ********************************************************************/
+public int getPyramidDepth (
+) {
+	return(pyramidDepth);
+} /* end getPyramidDepth */
+
+/*********************************************************************
+ Return the transformation for which the pyramids were built.
+ ********************************************************************/
+public int getTransformation (
+) {
+	return(transformation);
+} /* end getTransformation */
+
+/*********************************************************************
+ Return the full-size image width.
+ ********************************************************************/
+public int getWidth (
+) {
+	return(targetImg.getWidth());
+} /* end getWidth */
+
+} /* end class Reference */
+
 } /* end class TurboReg_ */
 
+/*====================================================================
+|	turboRegBandSum
+\===================================================================*/
+
+/*********************************************************************
+ This class describes a sum over the rows of an image, such as the
+ mean-square difference and its derivatives that are minimized by
+ <code>turboRegTransform</code>. The rows are either summed by the
+ calling thread, or split into bands of fixed size that are summed
+ concurrently on a fork-join pool. The partial sums of the bands are
+ merged pairwise in a fixed order, so that the result does not depend
+ on the number of threads.
+ ********************************************************************/
+abstract class turboRegBandSum
+
+{ /* class turboRegBandSum */
+
+/*....................................................................
+	public methods
+....................................................................*/
+/*********************************************************************
+ Add the partial sums of the rows <code>first</code> (inclusive) to
+ <code>last</code> (exclusive) to <code>sums</code>. This method is
+ called concurrently for disjoint bands of rows, each with its own
+ <code>sums</code> array.
+ @param first Index of the first row of the band.
+ @param last Index of the row that follows the band.
+ @param sums Partial sums of the band, initially zero.
+ ********************************************************************/
+public abstract void accumulate (
+	final int first,
+	final int last,
+	final double[] sums
+);
+
+/*********************************************************************
+ Sum all the rows and wait until they are done.
+ @param rowCount Number of rows.
+ @param sumCount Number of sums.
+ @param parallel Split the rows into bands that are summed concurrently.
+ @return The sums over all rows.
+ ********************************************************************/
+public double[] run (
+	final int rowCount,
+	final int sumCount,
+	final boolean parallel
+) {
+	if (parallel) {
+		return(new turboRegBandTask(this, 0, rowCount, sumCount).invoke());
+	}
+	final double[] sums = new double[sumCount];
+	accumulate(0, rowCount, sums);
+	return(sums);
+} /* end run */
+
+} /* end class turboRegBandSum */
+
+/*====================================================================
+|	turboRegBandTask
+\===================================================================*/
+
+/*********************************************************************
+ This class splits the rows of a <code>turboRegBandSum</code> in two
+ halves until the bands are short enough to be summed sequentially,
+ then adds the sums of the upper half to those of the lower half.
+ ********************************************************************/
+class turboRegBandTask
+	extends
+		RecursiveTask<double[]>
+
+{ /* class turboRegBandTask */
+
+/*....................................................................
+	private variables
+....................................................................*/
+private static final long serialVersionUID = 1L;
+
+/*********************************************************************
+ Bands of at most this many rows are not split further.
+ ********************************************************************/
+private static final int BAND_ROWS = 32;
+
+private final turboRegBandSum sum;
+private final int first;
+private final int last;
+private final int sumCount;
+
+/*....................................................................
+	constructors
+....................................................................*/
+/*********************************************************************
+ Keep the band of rows to sum.
+ @param sum Sum to which the rows contribute.
+ @param first Index of the first row of the band.
+ @param last Index of the row that follows the band.
+ @param sumCount Number of sums.
+ ********************************************************************/
+public turboRegBandTask (
+	final turboRegBandSum sum,
+	final int first,
+	final int last,
+	final int sumCount
+) {
+	this.sum = sum;
+	this.first = first;
+	this.last = last;
+	this.sumCount = sumCount;
+} /* end turboRegBandTask */
+
+/*....................................................................
+	protected methods
+....................................................................*/
+/*********************************************************************
+ Sum the band, splitting it if it is long.
+ ********************************************************************/
+protected double[] compute (
+) {
+	if ((last - first) <= BAND_ROWS) {
+		final double[] sums = new double[sumCount];
+		sum.accumulate(first, last, sums);
+		return(sums);
+	}
+	final int middle = (first + last) / 2;
+	final turboRegBandTask upper = new turboRegBandTask(sum, middle, last,
+		sumCount);
+	upper.fork();
+	final double[] sums = new turboRegBandTask(sum, first, middle,
+		sumCount).compute();
+	final double[] upperSums = upper.join();
+	for (int i = 0; (i < sumCount); i++) {
+		sums[i] += upperSums[i];
+	}
+	return(sums);
+} /* end compute */
+
+} /* end class turboRegBandTask */
+
 /*====================================================================
 |	turboRegCredits
 \===================================================================*/
@@ -2117,7 +2689,7 @@ public void restoreAll (
 	cancelImages();
 	tb.restorePreviousToolbar();
 	Toolbar.getInstance().repaint();
-	turboRegProgressBar.resetProgressBar();
+	turboRegProgressBar.IMAGEJ.resetProgressBar();
 	Runtime.getRuntime().gc();
 } /* end restoreAll */
 
@@ -2953,6 +3525,7 @@ private volatile int transformation;
 private volatile boolean accelerated;
 private volatile boolean saveOnExit;
 private volatile boolean colorOutput;
+private volatile boolean parallelReduction = false;
 
 /*....................................................................
 	Runnable methods
@@ -2983,6 +3556,7 @@ public void run (
 			tt = new turboRegTransform(sourceImg, sourceMsk, sourcePh,
 				targetImg, targetMsk, targetPh, transformation, accelerated,
 				(td != null));
+			tt.setParallelReduction(parallelReduction);
 			if (operation == AUTOMATIC) {
 				tt.doRegistration();
 			}
@@ -3201,6 +3775,16 @@ public Thread getThread (
 	return(t);
 } /* end getThread */
 
+/*********************************************************************
+ Sum the rows of the image concurrently during automatic registration.
+ @see turboRegTransform#setParallelReduction
+ ********************************************************************/
+public void setParallelReduction (
+	final boolean parallelReduction
+) {
+	this.parallelReduction = parallelReduction;
+} /* end setParallelReduction */
+
 /*********************************************************************
  Pass parameter from <code>turboRegDialog</code> to
  <code>turboRegFinalAction</code>.
@@ -3326,6 +3910,7 @@ private int height;
 private int pyramidDepth;
 private int transformation;
 private boolean isTarget;
+private final turboRegProgressBar progressBar;
 
 /*....................................................................
 	Runnable methods
@@ -3372,7 +3957,8 @@ public void run (
 ....................................................................*/
 /*********************************************************************
  Converts the pixel array of the incoming <code>ImagePlus</code>
- object into a local <code>float</code> array.
+ object into a local <code>float</code> array. Progress is reported
+ to ImageJ.
  @param imp <code>ImagePlus</code> object to preprocess.
  @param transformation Transformation code.
  @param isTarget Tags the current object as a target or source image.
@@ -3382,14 +3968,30 @@ public turboRegImage (
 	final int transformation,
 	final boolean isTarget
 ) {
-	t = new Thread(this);
-	t.setDaemon(true);
+	this(imp, transformation, isTarget, turboRegProgressBar.IMAGEJ);
+} /* end turboRegImage */
+
+/*********************************************************************
+ Converts the pixel array of the incoming <code>ImagePlus</code>
+ object into a local <code>float</code> array.
+ @param imp <code>ImagePlus</code> object to preprocess.
+ @param transformation Transformation code.
+ @param isTarget Tags the current object as a target or source image.
+ @param progressBar Progress counter of the current registration.
+ ********************************************************************/
+public turboRegImage (
+	final ImagePlus imp,
+	final int transformation,
+	final boolean isTarget,
+	final turboRegProgressBar progressBar
+) {
+	this.progressBar = progressBar;
 	this.transformation = transformation;
 	this.isTarget = isTarget;
 	width = imp.getWidth();
 	height = imp.getHeight();
 	int k = 0;
-	turboRegProgressBar.addWorkload(height);
+	progressBar.addWorkload(height);
 	if (imp.getType() == ImagePlus.GRAY8) {
 		image = new float[width * height];
 		final byte[] pixels = (byte[])imp.getProcessor().getPixels();
@@ -3397,7 +3999,7 @@ public turboRegImage (
 			for (int x = 0; (x < width); x++, k++) {
 				image[k] = (float)(pixels[k] & 0xFF);
 			}
-			turboRegProgressBar.stepProgressBar();
+			progressBar.stepProgressBar();
 		}
 	}
 	else if (imp.getType() == ImagePlus.GRAY16) {
@@ -3412,13 +4014,13 @@ public turboRegImage (
 					image[k] = (float)pixels[k];
 				}
 			}
-			turboRegProgressBar.stepProgressBar();
+			progressBar.stepProgressBar();
 		}
 	}
 	else if (imp.getType() == ImagePlus.GRAY32) {
 		image = (float[])imp.getProcessor().getPixels();
 	}
-	turboRegProgressBar.workloadDone(height);
+	progressBar.workloadDone(height);
 } /* end turboRegImage */
 
 
@@ -3487,10 +4089,15 @@ public int getPyramidDepth (
 
 /*********************************************************************
  Return the thread associated with this <code>turboRegImage</code>
- object.
+ object. The thread is created on the first call; objects whose
+ precomputations are handed to an executor never create one.
  ********************************************************************/
-public Thread getThread (
+public synchronized Thread getThread (
 ) {
+	if (t == null) {
+		t = new Thread(this);
+		t.setDaemon(true);
+	}
 	return(t);
 } /* end getThread */
 
@@ -3568,10 +4175,6 @@ private void basicToCardinal2D (
 	final int height,
 	final int degree
 ) {
-	final double[] hLine = new double[width];
-	final double[] vLine = new double[height];
-	final double[] hData = new double[width];
-	final double[] vData = new double[height];
 	double[] h = null;
 	switch (degree) {
 		case 3: {
@@ -3593,24 +4196,45 @@ private void basicToCardinal2D (
 			h[0] = 1.0;
 		}
 	}
+	final double[] filter = h;
 	int workload = width + height;
-	turboRegProgressBar.addWorkload(workload);
-	for (int y = 0; ((y < height) && (!t.isInterrupted())); y++) {
-		extractRow(basic, y, hLine);
-		symmetricFirMirrorOffBounds1D(h, hLine, hData);
-		putRow(cardinal, y, hData);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; ((x < width) && (!t.isInterrupted())); x++) {
-		extractColumn(cardinal, width, x, vLine);
-		symmetricFirMirrorOffBounds1D(h, vLine, vData);
-		putColumn(cardinal, width, x, vData);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(width + height);
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[width];
+			final double[] hData = new double[width];
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				extractRow(basic, y, hLine);
+				symmetricFirMirrorOffBounds1D(filter, hLine, hData);
+				putRow(cardinal, y, hData);
+				progressBar.stepProgressBar();
+			}
+			return(y - first);
+		}
+	}.run(height);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[height];
+			final double[] vData = new double[height];
+			int x = first;
+			for (; ((x < last) && (!isInterrupted())); x++) {
+				extractColumn(cardinal, width, x, vLine);
+				symmetricFirMirrorOffBounds1D(filter, vLine, vData);
+				putColumn(cardinal, width, x, vData);
+				progressBar.stepProgressBar();
+			}
+			return(x - first);
+		}
+	}.run(width);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(width + height);
 } /* end basicToCardinal2D */
 
 /*------------------------------------------------------------------*/
@@ -3624,8 +4248,8 @@ private void buildCoefficientPyramid (
 	if (1 < pyramidDepth) {
 		basicToCardinal2D(coefficient, fullDual, width, height, 7);
 	}
-	for (int depth = 1; ((depth < pyramidDepth) && (!t.isInterrupted()));
-		depth++) {
+	for (int depth = 1; ((depth < pyramidDepth)
+		&& (!Thread.currentThread().isInterrupted())); depth++) {
 		fullWidth = halfWidth;
 		fullHeight = halfHeight;
 		halfWidth /= 2;
@@ -3651,8 +4275,8 @@ private void buildImageAndGradientPyramid (
 	if (1 < pyramidDepth) {
 		cardinalToDual2D(image, fullDual, width, height, 3);
 	}
-	for (int depth = 1; ((depth < pyramidDepth) && (!t.isInterrupted()));
-		depth++) {
+	for (int depth = 1; ((depth < pyramidDepth)
+		&& (!Thread.currentThread().isInterrupted())); depth++) {
 		fullWidth = halfWidth;
 		fullHeight = halfHeight;
 		halfWidth /= 2;
@@ -3685,8 +4309,8 @@ private void buildImagePyramid (
 	if (1 < pyramidDepth) {
 		cardinalToDual2D(image, fullDual, width, height, 3);
 	}
-	for (int depth = 1; ((depth < pyramidDepth) && (!t.isInterrupted()));
-		depth++) {
+	for (int depth = 1; ((depth < pyramidDepth)
+		&& (!Thread.currentThread().isInterrupted())); depth++) {
 		fullWidth = halfWidth;
 		fullHeight = halfHeight;
 		halfWidth /= 2;
@@ -3741,37 +4365,51 @@ private void coefficientToXYGradient2D (
 	final int width,
 	final int height
 ) {
-	final double[] hLine = new double[width];
-	final double[] hData = new double[width];
-	final double[] vLine = new double[height];
 	int workload = 2 * (width + height);
-	turboRegProgressBar.addWorkload(workload);
-	for (int y = 0; ((y < height) && (!t.isInterrupted())); y++) {
-		extractRow(basic, y, hLine);
-		System.arraycopy(hLine, 0, hData, 0, width);
-		coefficientToGradient1D(hLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-		coefficientToSamples1D(hData);
-		putRow(xGradient, y, hLine);
-		putRow(yGradient, y, hData);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; ((x < width) && (!t.isInterrupted())); x++) {
-		extractColumn(xGradient, width, x, vLine);
-		coefficientToSamples1D(vLine);
-		putColumn(xGradient, width, x, vLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-		extractColumn(yGradient, width, x, vLine);
-		coefficientToGradient1D(vLine);
-		putColumn(yGradient, width, x, vLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(2 * (width + height));
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[width];
+			final double[] hData = new double[width];
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				extractRow(basic, y, hLine);
+				System.arraycopy(hLine, 0, hData, 0, width);
+				coefficientToGradient1D(hLine);
+				progressBar.stepProgressBar();
+				coefficientToSamples1D(hData);
+				putRow(xGradient, y, hLine);
+				putRow(yGradient, y, hData);
+				progressBar.stepProgressBar();
+			}
+			return(2 * (y - first));
+		}
+	}.run(height);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[height];
+			int x = first;
+			for (; ((x < last) && (!isInterrupted())); x++) {
+				extractColumn(xGradient, width, x, vLine);
+				coefficientToSamples1D(vLine);
+				putColumn(xGradient, width, x, vLine);
+				progressBar.stepProgressBar();
+				extractColumn(yGradient, width, x, vLine);
+				coefficientToGradient1D(vLine);
+				putColumn(yGradient, width, x, vLine);
+				progressBar.stepProgressBar();
+			}
+			return(2 * (x - first));
+		}
+	}.run(width);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(2 * (width + height));
 } /* end coefficientToXYGradient2D */
 
 /*------------------------------------------------------------------*/
@@ -3815,25 +4453,41 @@ private void extractRow (
 private float[] getBasicFromCardinal2D (
 ) {
 	final float[] basic = new float[width * height];
-	final double[] hLine = new double[width];
-	final double[] vLine = new double[height];
-	turboRegProgressBar.addWorkload(width + height);
-	for (int y = 0; (y < height); y++) {
-		extractRow(image, y, hLine);
-		samplesToInterpolationCoefficient1D(hLine, 3, 0.0);
-		putRow(basic, y, hLine);
-		turboRegProgressBar.stepProgressBar();
-	}
-	for (int x = 0; (x < width); x++) {
-		extractColumn(basic, width, x, vLine);
-		samplesToInterpolationCoefficient1D(vLine, 3, 0.0);
-		putColumn(basic, width, x, vLine);
-		turboRegProgressBar.stepProgressBar();
-	}
-	turboRegProgressBar.workloadDone(width + height);
-	return(basic);
-} /* end getBasicFromCardinal2D */
-
+	progressBar.addWorkload(width + height);
+	new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[width];
+			for (int y = first; (y < last); y++) {
+				extractRow(image, y, hLine);
+				samplesToInterpolationCoefficient1D(hLine, 3, 0.0);
+				putRow(basic, y, hLine);
+				progressBar.stepProgressBar();
+			}
+			return(last - first);
+		}
+	}.run(height);
+	new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[height];
+			for (int x = first; (x < last); x++) {
+				extractColumn(basic, width, x, vLine);
+				samplesToInterpolationCoefficient1D(vLine, 3, 0.0);
+				putColumn(basic, width, x, vLine);
+				progressBar.stepProgressBar();
+			}
+			return(last - first);
+		}
+	}.run(width);
+	progressBar.workloadDone(width + height);
+	return(basic);
+} /* end getBasicFromCardinal2D */
+
 /*------------------------------------------------------------------*/
 private float[] getBasicFromCardinal2D (
 	final float[] cardinal,
@@ -3842,26 +4496,42 @@ private float[] getBasicFromCardinal2D (
 	final int degree
 ) {
 	final float[] basic = new float[width * height];
-	final double[] hLine = new double[width];
-	final double[] vLine = new double[height];
 	int workload = width + height;
-	turboRegProgressBar.addWorkload(workload);
-	for (int y = 0; ((y < height) && (!t.isInterrupted())); y++) {
-		extractRow(cardinal, y, hLine);
-		samplesToInterpolationCoefficient1D(hLine, degree, 0.0);
-		putRow(basic, y, hLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; ((x < width) && (!t.isInterrupted())); x++) {
-		extractColumn(basic, width, x, vLine);
-		samplesToInterpolationCoefficient1D(vLine, degree, 0.0);
-		putColumn(basic, width, x, vLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(width + height);
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[width];
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				extractRow(cardinal, y, hLine);
+				samplesToInterpolationCoefficient1D(hLine, degree, 0.0);
+				putRow(basic, y, hLine);
+				progressBar.stepProgressBar();
+			}
+			return(y - first);
+		}
+	}.run(height);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[height];
+			int x = first;
+			for (; ((x < last) && (!isInterrupted())); x++) {
+				extractColumn(basic, width, x, vLine);
+				samplesToInterpolationCoefficient1D(vLine, degree, 0.0);
+				putColumn(basic, width, x, vLine);
+				progressBar.stepProgressBar();
+			}
+			return(x - first);
+		}
+	}.run(width);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(width + height);
 	return(basic);
 } /* end getBasicFromCardinal2D */
 
@@ -3873,30 +4543,46 @@ private float[] getHalfDual2D (
 ) {
 	final int halfWidth = fullWidth / 2;
 	final int halfHeight = fullHeight / 2;
-	final double[] hLine = new double[fullWidth];
-	final double[] hData = new double[halfWidth];
-	final double[] vLine = new double[fullHeight];
-	final double[] vData = new double[halfHeight];
 	final float[] demiDual = new float[halfWidth * fullHeight];
 	final float[] halfDual = new float[halfWidth * halfHeight];
 	int workload = halfWidth + fullHeight;
-	turboRegProgressBar.addWorkload(workload);
-	for (int y = 0; ((y < fullHeight) && (!t.isInterrupted())); y++) {
-		extractRow(fullDual, y, hLine);
-		reduceDual1D(hLine, hData);
-		putRow(demiDual, y, hData);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; ((x < halfWidth) && (!t.isInterrupted())); x++) {
-		extractColumn(demiDual, halfWidth, x, vLine);
-		reduceDual1D(vLine, vData);
-		putColumn(halfDual, halfWidth, x, vData);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(halfWidth + fullHeight);
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[fullWidth];
+			final double[] hData = new double[halfWidth];
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				extractRow(fullDual, y, hLine);
+				reduceDual1D(hLine, hData);
+				putRow(demiDual, y, hData);
+				progressBar.stepProgressBar();
+			}
+			return(y - first);
+		}
+	}.run(fullHeight);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[fullHeight];
+			final double[] vData = new double[halfHeight];
+			int x = first;
+			for (; ((x < last) && (!isInterrupted())); x++) {
+				extractColumn(demiDual, halfWidth, x, vLine);
+				reduceDual1D(vLine, vData);
+				putColumn(halfDual, halfWidth, x, vData);
+				progressBar.stepProgressBar();
+			}
+			return(x - first);
+		}
+	}.run(halfWidth);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(halfWidth + fullHeight);
 	return(halfDual);
 } /* end getHalfDual2D */
 
@@ -3935,30 +4621,46 @@ private double getInitialCausalCoefficientMirrorOffBounds (
 /*------------------------------------------------------------------*/
 private void imageToXYGradient2D (
 ) {
-	final double[] hLine = new double[width];
-	final double[] vLine = new double[height];
 	xGradient = new float[width * height];
 	yGradient = new float[width * height];
 	int workload = width + height;
-	turboRegProgressBar.addWorkload(workload);
-	for (int y = 0; ((y < height) && (!t.isInterrupted())); y++) {
-		extractRow(image, y, hLine);
-		samplesToInterpolationCoefficient1D(hLine, 3, 0.0);
-		coefficientToGradient1D(hLine);
-		putRow(xGradient, y, hLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; ((x < width) && (!t.isInterrupted())); x++) {
-		extractColumn(image, width, x, vLine);
-		samplesToInterpolationCoefficient1D(vLine, 3, 0.0);
-		coefficientToGradient1D(vLine);
-		putColumn(yGradient, width, x, vLine);
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(width + height);
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] hLine = new double[width];
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				extractRow(image, y, hLine);
+				samplesToInterpolationCoefficient1D(hLine, 3, 0.0);
+				coefficientToGradient1D(hLine);
+				putRow(xGradient, y, hLine);
+				progressBar.stepProgressBar();
+			}
+			return(y - first);
+		}
+	}.run(height);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			final double[] vLine = new double[height];
+			int x = first;
+			for (; ((x < last) && (!isInterrupted())); x++) {
+				extractColumn(image, width, x, vLine);
+				samplesToInterpolationCoefficient1D(vLine, 3, 0.0);
+				coefficientToGradient1D(vLine);
+				putColumn(yGradient, width, x, vLine);
+				progressBar.stepProgressBar();
+			}
+			return(x - first);
+		}
+	}.run(width);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(width + height);
 } /* end imageToXYGradient2D */
 
 /*------------------------------------------------------------------*/
@@ -4173,6 +4875,137 @@ private void symmetricFirMirrorOffBounds1D (
 
 } /* end class turboRegImage */
 
+/*====================================================================
+|	turboRegLinePass
+\===================================================================*/
+
+/*********************************************************************
+ This class describes one pass of a separable 2D computation, in which
+ every row (or every column) can be processed independently of the
+ others. The lines are split into contiguous runs that are processed
+ concurrently on a fork-join pool; each run allocates its own scratch
+ buffers. When called from a fork-join worker the runs go to that
+ worker's pool, otherwise to the common pool.
+ ********************************************************************/
+abstract class turboRegLinePass
+
+{ /* class turboRegLinePass */
+
+/*....................................................................
+	private variables
+....................................................................*/
+private final Thread owner = Thread.currentThread();
+
+/*....................................................................
+	public methods
+....................................................................*/
+/*********************************************************************
+ Process the lines <code>first</code> (inclusive) to <code>last</code>
+ (exclusive). This method is called concurrently for disjoint runs of
+ lines.
+ @param first Index of the first line of the run.
+ @param last Index of the line that follows the run.
+ @return The number of lines that have been processed, which is less
+ than <code>last - first</code> if the pass was interrupted.
+ ********************************************************************/
+public abstract int processLines (
+	final int first,
+	final int last
+);
+
+/*********************************************************************
+ Process all the lines and wait until they are done.
+ @param lineCount Number of lines of the pass.
+ @return The number of lines that have been processed.
+ ********************************************************************/
+public int run (
+	final int lineCount
+) {
+	return(new turboRegLineTask(this, 0, lineCount).invoke());
+} /* end run */
+
+/*....................................................................
+	protected methods
+....................................................................*/
+/*********************************************************************
+ Return <code>true</code> if the thread that created this pass has
+ been interrupted. The lines themselves may be processed by other
+ threads, which do not see the interruption.
+ ********************************************************************/
+protected boolean isInterrupted (
+) {
+	return(owner.isInterrupted());
+} /* end isInterrupted */
+
+} /* end class turboRegLinePass */
+
+/*====================================================================
+|	turboRegLineTask
+\===================================================================*/
+
+/*********************************************************************
+ This class splits the lines of a <code>turboRegLinePass</code> in two
+ halves until the runs are short enough to be processed sequentially.
+ ********************************************************************/
+class turboRegLineTask
+	extends
+		RecursiveTask<Integer>
+
+{ /* class turboRegLineTask */
+
+/*....................................................................
+	private variables
+....................................................................*/
+private static final long serialVersionUID = 1L;
+
+/*********************************************************************
+ Runs of at most this many lines are not split further.
+ ********************************************************************/
+private static final int MIN_LINES = 16;
+
+private final turboRegLinePass pass;
+private final int first;
+private final int last;
+
+/*....................................................................
+	constructors
+....................................................................*/
+/*********************************************************************
+ Keep the run of lines to process.
+ @param pass Pass to which the lines belong.
+ @param first Index of the first line of the run.
+ @param last Index of the line that follows the run.
+ ********************************************************************/
+public turboRegLineTask (
+	final turboRegLinePass pass,
+	final int first,
+	final int last
+) {
+	this.pass = pass;
+	this.first = first;
+	this.last = last;
+} /* end turboRegLineTask */
+
+/*....................................................................
+	protected methods
+....................................................................*/
+/*********************************************************************
+ Process the run, splitting it if it is long.
+ ********************************************************************/
+protected Integer compute (
+) {
+	if ((last - first) <= MIN_LINES) {
+		return(Integer.valueOf(pass.processLines(first, last)));
+	}
+	final int middle = (first + last) / 2;
+	final turboRegLineTask upper = new turboRegLineTask(pass, middle, last);
+	upper.fork();
+	final int lower = new turboRegLineTask(pass, first, middle).compute();
+	return(Integer.valueOf(lower + upper.join()));
+} /* end compute */
+
+} /* end class turboRegLineTask */
+
 /*====================================================================
 |	turboRegMask
 \===================================================================*/
@@ -4197,6 +5030,7 @@ private float[] mask;
 private int width;
 private int height;
 private int pyramidDepth;
+private final turboRegProgressBar progressBar;
 
 /*....................................................................
 	Runnable methods
@@ -4214,18 +5048,31 @@ public void run (
 ....................................................................*/
 /*********************************************************************
  Converts the pixel array of the incoming <code>ImagePlus</code>
- object into a local <code>boolean</code> array.
+ object into a local <code>boolean</code> array. Progress is reported
+ to ImageJ.
  @param imp <code>ImagePlus</code> object to preprocess.
  ********************************************************************/
 public turboRegMask (
 	final ImagePlus imp
 ) {
-	t = new Thread(this);
-	t.setDaemon(true);
+	this(imp, turboRegProgressBar.IMAGEJ);
+} /* end turboRegMask */
+
+/*********************************************************************
+ Converts the pixel array of the incoming <code>ImagePlus</code>
+ object into a local <code>boolean</code> array.
+ @param imp <code>ImagePlus</code> object to preprocess.
+ @param progressBar Progress counter of the current registration.
+ ********************************************************************/
+public turboRegMask (
+	final ImagePlus imp,
+	final turboRegProgressBar progressBar
+) {
+	this.progressBar = progressBar;
 	width = imp.getWidth();
 	height = imp.getHeight();
 	int k = 0;
-	turboRegProgressBar.addWorkload(height);
+	progressBar.addWorkload(height);
 	mask = new float[width * height];
 	if (imp.getType() == ImagePlus.GRAY8) {
 		final byte[] pixels = (byte[])imp.getProcessor().getPixels();
@@ -4233,7 +5080,7 @@ public turboRegMask (
 			for (int x = 0; (x < width); x++, k++) {
 				mask[k] = (float)pixels[k];
 			}
-			turboRegProgressBar.stepProgressBar();
+			progressBar.stepProgressBar();
 		}
 	}
 	else if (imp.getType() == ImagePlus.GRAY16) {
@@ -4242,7 +5089,7 @@ public turboRegMask (
 			for (int x = 0; (x < width); x++, k++) {
 				mask[k] = (float)pixels[k];
 			}
-			turboRegProgressBar.stepProgressBar();
+			progressBar.stepProgressBar();
 		}
 	}
 	else if (imp.getType() == ImagePlus.GRAY32) {
@@ -4251,10 +5098,10 @@ public turboRegMask (
 			for (int x = 0; (x < width); x++, k++) {
 				mask[k] = pixels[k];
 			}
-			turboRegProgressBar.stepProgressBar();
+			progressBar.stepProgressBar();
 		}
 	}
-	turboRegProgressBar.workloadDone(height);
+	progressBar.workloadDone(height);
 } /* end turboRegMask */
 
 /*....................................................................
@@ -4266,14 +5113,14 @@ public turboRegMask (
 public void clearMask (
 ) {
 	int k = 0;
-	turboRegProgressBar.addWorkload(height);
+	progressBar.addWorkload(height);
 	for (int y = 0; (y < height); y++) {
 		for (int x = 0; (x < width); x++) {
 			mask[k++] = 1.0F;
 		}
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(height);
+	progressBar.workloadDone(height);
 } /* end clearMask */
 
 /*********************************************************************
@@ -4308,10 +5155,15 @@ public Stack<float[]> getPyramid (
 
 /*********************************************************************
  Return the thread associated with this <code>turboRegMask</code>
- object.
+ object. The thread is created on the first call; objects whose
+ precomputations are handed to an executor never create one.
  ********************************************************************/
-public Thread getThread (
+public synchronized Thread getThread (
 ) {
+	if (t == null) {
+		t = new Thread(this);
+		t.setDaemon(true);
+	}
 	return(t);
 } /* end getThread */
 
@@ -4336,8 +5188,8 @@ private void buildPyramid (
 	float[] fullMask = mask;
 	int halfWidth = width;
 	int halfHeight = height;
-	for (int depth = 1; ((depth < pyramidDepth) && (!t.isInterrupted()));
-		depth++) {
+	for (int depth = 1; ((depth < pyramidDepth)
+		&& (!Thread.currentThread().isInterrupted())); depth++) {
 		fullWidth = halfWidth;
 		fullHeight = halfHeight;
 		halfWidth /= 2;
@@ -4356,71 +5208,37 @@ private float[] getHalfMask2D (
 ) {
 	final int halfWidth = fullWidth / 2;
 	final int halfHeight = fullHeight / 2;
-	final boolean oddWidth = ((2 * halfWidth) != fullWidth);
-	int workload = 2 * halfHeight;
+	int workload = halfHeight;
 	final float[] halfMask = new float[halfWidth * halfHeight];
-	int k = 0;
-	for (int y = 0; ((y < halfHeight) && (!t.isInterrupted())); y++) {
-		for (int x = 0; (x < halfWidth); x++) {
-			halfMask[k++] = 0.0F;
+	progressBar.addWorkload(workload);
+	workload -= new turboRegLinePass() {
+		public int processLines (
+			final int first,
+			final int last
+		) {
+			int y = first;
+			for (; ((y < last) && (!isInterrupted())); y++) {
+				final int firstRow = (y == 0) ? (0) : (2 * y - 1);
+				int k = y * halfWidth;
+				for (int x = 0; (x < halfWidth); x++, k++) {
+					final int firstColumn = (x == 0) ? (0) : (2 * x - 1);
+					float sum = 0.0F;
+					for (int row = firstRow; (row <= (2 * y + 1)); row++) {
+						final int n = row * fullWidth;
+						for (int column = firstColumn; (column <= (2 * x + 1));
+							column++) {
+							sum += Math.abs(fullMask[n + column]);
+						}
+					}
+					halfMask[k] = sum;
+				}
+				progressBar.stepProgressBar();
+			}
+			return(y - first);
 		}
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	k = 0;
-	int n = 0;
-	for (int y = 0; ((y < (halfHeight - 1)) && (!t.isInterrupted())); y++) {
-		for (int x = 0; (x < (halfWidth - 1)); x++) {
-			halfMask[k] += Math.abs(fullMask[n++]);
-			halfMask[k] += Math.abs(fullMask[n]);
-			halfMask[++k] += Math.abs(fullMask[n++]);
-		}
-		halfMask[k] += Math.abs(fullMask[n++]);
-		halfMask[k++] += Math.abs(fullMask[n++]);
-		if (oddWidth) {
-			n++;
-		}
-		for (int x = 0; (x < (halfWidth - 1)); x++) {
-			halfMask[k - halfWidth] += Math.abs(fullMask[n]);
-			halfMask[k] += Math.abs(fullMask[n++]);
-			halfMask[k - halfWidth] += Math.abs(fullMask[n]);
-			halfMask[k - halfWidth + 1] += Math.abs(fullMask[n]);
-			halfMask[k] += Math.abs(fullMask[n]);
-			halfMask[++k] += Math.abs(fullMask[n++]);
-		}
-		halfMask[k - halfWidth] += Math.abs(fullMask[n]);
-		halfMask[k] += Math.abs(fullMask[n++]);
-		halfMask[k - halfWidth] += Math.abs(fullMask[n]);
-		halfMask[k++] += Math.abs(fullMask[n++]);
-		if (oddWidth) {
-			n++;
-		}
-		k -= halfWidth;
-		turboRegProgressBar.stepProgressBar();
-		workload--;
-	}
-	for (int x = 0; (x < (halfWidth - 1)); x++) {
-		halfMask[k] += Math.abs(fullMask[n++]);
-		halfMask[k] += Math.abs(fullMask[n]);
-		halfMask[++k] += Math.abs(fullMask[n++]);
-	}
-	halfMask[k] += Math.abs(fullMask[n++]);
-	halfMask[k++] += Math.abs(fullMask[n++]);
-	if (oddWidth) {
-		n++;
-	}
-	k -= halfWidth;
-	for (int x = 0; (x < (halfWidth - 1)); x++) {
-		halfMask[k] += Math.abs(fullMask[n++]);
-		halfMask[k] += Math.abs(fullMask[n]);
-		halfMask[++k] += Math.abs(fullMask[n++]);
-	}
-	halfMask[k] += Math.abs(fullMask[n++]);
-	halfMask[k] += Math.abs(fullMask[n]);
-	turboRegProgressBar.stepProgressBar();
-	workload--;
-	turboRegProgressBar.skipProgressBar(workload);
-	turboRegProgressBar.workloadDone(2 * halfHeight);
+	}.run(halfHeight);
+	progressBar.skipProgressBar(workload);
+	progressBar.workloadDone(halfHeight);
 	return(halfMask);
 } /* end getHalfMask2D */
 
@@ -5880,13 +6698,26 @@ private void showMessage (
 \===================================================================*/
 
 /*********************************************************************
- This class implements the interactions when dealing with ImageJ's
- progress bar.
+ This class keeps track of the amount of work that a registration has
+ to perform and of how much of it has been completed. The counters are
+ lock-free, so that the many threads that contribute to one registration,
+ as well as many concurrent registrations, never contend on a shared
+ monitor. Each registration may own its own instance, which can then be
+ polled; the <code>IMAGEJ</code> instance additionally reports to ImageJ's
+ progress bar and is used by the dialog and command-line paths.
  ********************************************************************/
 class turboRegProgressBar
 
 { /* class turboRegProgressBar */
 
+/*....................................................................
+	public variables
+....................................................................*/
+/*********************************************************************
+ Shared instance that drives ImageJ's progress bar.
+ ********************************************************************/
+public static final turboRegProgressBar IMAGEJ = new turboRegProgressBar(true);
+
 /*....................................................................
 	private variables
 ....................................................................*/
@@ -5895,9 +6726,31 @@ class turboRegProgressBar
  ********************************************************************/
 private static final long TIME_QUANTUM = 50L;
 
-private static volatile long lastTime = System.currentTimeMillis();
-private static volatile int completed = 0;
-private static volatile int workload = 0;
+private final AtomicLong lastTime = new AtomicLong(System.currentTimeMillis());
+private final LongAdder completed = new LongAdder();
+private final LongAdder workload = new LongAdder();
+private final boolean showProgress;
+
+/*....................................................................
+	constructors
+....................................................................*/
+/*********************************************************************
+ Create a counter that is only meant to be polled.
+ ********************************************************************/
+public turboRegProgressBar (
+) {
+	this(false);
+} /* end turboRegProgressBar */
+
+/*********************************************************************
+ Create a counter.
+ @param showProgress Whether ImageJ's progress bar should be updated.
+ ********************************************************************/
+public turboRegProgressBar (
+	final boolean showProgress
+) {
+	this.showProgress = showProgress;
+} /* end turboRegProgressBar */
 
 /*....................................................................
 	public methods
@@ -5906,53 +6759,83 @@ private static volatile int workload = 0;
  Extend the amount of work to perform by <code>batch</code>.
  @param batch Additional amount of work that need be performed.
  ********************************************************************/
-public static synchronized void addWorkload (
+public void addWorkload (
 	final int batch
 ) {
-	workload += batch;
+	workload.add(batch);
 } /* end addWorkload */
 
+/*********************************************************************
+ Return the amount of work completed so far.
+ ********************************************************************/
+public long getCompleted (
+) {
+	return(completed.sum());
+} /* end getCompleted */
+
+/*********************************************************************
+ Return the fraction of the pending work that is completed, between
+ <code>0.0</code> and <code>1.0</code>. When nothing is pending, the
+ value <code>1.0</code> is returned.
+ ********************************************************************/
+public double getProgress (
+) {
+	final long pending = workload.sum();
+	if (pending <= 0L) {
+		return(1.0);
+	}
+	return(Math.min(1.0, (double)completed.sum() / (double)pending));
+} /* end getProgress */
+
+/*********************************************************************
+ Return the amount of work that is pending, including the completed
+ part.
+ ********************************************************************/
+public long getWorkload (
+) {
+	return(workload.sum());
+} /* end getWorkload */
+
 /*********************************************************************
  Erase the progress bar and cancel pending operations.
  ********************************************************************/
-public static synchronized void resetProgressBar (
+public void resetProgressBar (
 ) {
-	final long timeStamp = System.currentTimeMillis();
-	if ((timeStamp - lastTime) < TIME_QUANTUM) {
-		try {
-			Thread.sleep(TIME_QUANTUM - timeStamp + lastTime);
-		} catch (InterruptedException e) {
-			IJ.log(
-				"Unexpected interruption exception " + e.getMessage());
-		}
-	}
-	lastTime = timeStamp;
-	completed = 0;
-	workload = 0;
-	IJ.showProgress(1.0);
+	lastTime.set(System.currentTimeMillis());
+	completed.reset();
+	workload.reset();
+	if (showProgress) {
+		IJ.showProgress(1.0);
+	}
 } /* end resetProgressBar */
 
 /*********************************************************************
  Perform <code>stride</code> operations at once.
  @param stride Amount of work that is skipped.
  ********************************************************************/
-public static synchronized void skipProgressBar (
+public void skipProgressBar (
 	final int stride
 ) {
-	completed += stride - 1;
+	completed.add(stride - 1);
 	stepProgressBar();
 } /* end skipProgressBar */
 
 /*********************************************************************
  Perform <code>1</code> operation unit.
  ********************************************************************/
-public static synchronized void stepProgressBar (
+public void stepProgressBar (
 ) {
+	completed.increment();
+	if (!showProgress) {
+		return;
+	}
 	final long timeStamp = System.currentTimeMillis();
-	completed = completed + 1;
-	if ((TIME_QUANTUM <= (timeStamp - lastTime)) | (completed == workload)) {
-		lastTime = timeStamp;
-		IJ.showProgress((double)completed / (double)workload);
+	final long previousTime = lastTime.get();
+	final long done = completed.sum();
+	final long pending = workload.sum();
+	if (((TIME_QUANTUM <= (timeStamp - previousTime)) | (done == pending))
+		&& lastTime.compareAndSet(previousTime, timeStamp)) {
+		IJ.showProgress((double)done / (double)pending);
 	}
 } /* end stepProgressBar */
 
@@ -5960,11 +6843,11 @@ public static synchronized void stepProgressBar (
  Acknowledge that <code>batch</code> work has been performed.
  @param batch Completed amount of work.
  ********************************************************************/
-public static synchronized void workloadDone (
+public void workloadDone (
 	final int batch
 ) {
-	workload -= batch;
-	completed -= batch;
+	workload.add(-batch);
+	completed.add(-batch);
 } /* end workloadDone */
 
 } /* end class turboRegProgressBar */
@@ -6034,6 +6917,7 @@ private static final int ITERATION_PROGRESSION = 2;
 
 private boolean accelerated;
 private boolean interactive;
+private boolean parallelReduction = false;
 private double c0;
 private double c0u;
 private double c0v;
@@ -6058,8 +6942,6 @@ private double x;
 private double y;
 private double[][] sourcePoint;
 private double[][] targetPoint;
-private final double[] dxWeight = new double[4];
-private final double[] dyWeight = new double[4];
 private final double[] xWeight = new double[4];
 private final double[] yWeight = new double[4];
 private final int[] xIndex = new int[4];
@@ -6073,6 +6955,7 @@ private float[] yGradient;
 private int inNx;
 private int inNy;
 private int iterationCost;
+private int optimizerIterationCount = 0;
 private int iterationPower;
 private int maxIterations;
 private int outNx;
@@ -6088,6 +6971,7 @@ private turboRegImage targetImg;
 private turboRegMask sourceMsk;
 private turboRegMask targetMsk;
 private turboRegPointHandler sourcePh;
+private final turboRegProgressBar progressBar;
 
 /*....................................................................
 	constructors
@@ -6116,6 +7000,37 @@ public turboRegTransform (
 	final boolean accelerated,
 	final boolean interactive
 ) {
+	this(sourceImg, sourceMsk, sourcePh, targetImg, targetMsk, targetPh,
+		transformation, accelerated, interactive, turboRegProgressBar.IMAGEJ);
+} /* end turboRegTransform */
+
+/*********************************************************************
+ Keep a local copy of most everything. Select among the pre-stored
+ constants.
+ @param targetImg Target image pyramid.
+ @param targetMsk Target mask pyramid.
+ @param sourceImg Source image pyramid.
+ @param sourceMsk Source mask pyramid.
+ @param targetPh Target <code>turboRegPointHandler</code> object.
+ @param sourcePh Source <code>turboRegPointHandler</code> object.
+ @param transformation Transformation code.
+ @param accelerated Trade-off between speed and accuracy.
+ @param interactive Shows or hides the resulting image.
+ @param progressBar Progress counter of the current registration.
+ ********************************************************************/
+public turboRegTransform (
+	final turboRegImage sourceImg,
+	final turboRegMask sourceMsk,
+	final turboRegPointHandler sourcePh,
+	final turboRegImage targetImg,
+	final turboRegMask targetMsk,
+	final turboRegPointHandler targetPh,
+	final int transformation,
+	final boolean accelerated,
+	final boolean interactive,
+	final turboRegProgressBar progressBar
+) {
+	this.progressBar = progressBar;
 	this.sourceImg = sourceImg;
 	this.sourceMsk = sourceMsk;
 	this.sourcePh = sourcePh;
@@ -6383,13 +7298,13 @@ public void doRegistration (
 	else {
 		sourceImgPyramid = sourceImg.getPyramid();
 		sourceMskPyramid = sourceMsk.getPyramid();
-		targetImgPyramid = targetImg.getPyramid();
-		targetMskPyramid = targetMsk.getPyramid();
+		targetImgPyramid = (Stack<?>)targetImg.getPyramid().clone();
+		targetMskPyramid = (Stack<?>)targetMsk.getPyramid().clone();
 	}
 	pyramidDepth = targetImg.getPyramidDepth();
 	iterationPower = (int)Math.pow(
 		(double)ITERATION_PROGRESSION, (double)pyramidDepth);
-	turboRegProgressBar.addWorkload(
+	progressBar.addWorkload(
 		pyramidDepth * maxIterations * iterationPower
 		/ ITERATION_PROGRESSION
 		- (iterationPower - 1) / (ITERATION_PROGRESSION - 1));
@@ -6509,7 +7424,7 @@ public void doRegistration (
 	twiceInNx = 2 * inNx;
 	twiceInNy = 2 * inNy;
 	if (accelerated) {
-		turboRegProgressBar.skipProgressBar(
+		progressBar.skipProgressBar(
 			iterationCost * (maxIterations - 1));
 	}
 	else {
@@ -6534,11 +7449,31 @@ public void doRegistration (
 	sourcePh.setPoints(sourcePoint);
 	iterationPower = (int)Math.pow(
 		(double)ITERATION_PROGRESSION, (double)pyramidDepth);
-	turboRegProgressBar.workloadDone(
+	progressBar.workloadDone(
 		pyramidDepth * maxIterations * iterationPower / ITERATION_PROGRESSION
 		- (iterationPower - 1) / (ITERATION_PROGRESSION - 1));
 } /* end doRegistration */
 
+/*********************************************************************
+ Return the number of Marquardt-Levenberg iterations performed by the
+ optimizers since this object was created, summed over all pyramid
+ levels. Every iteration evaluates the criterion once, including the
+ evaluations of the starting and of the final landmarks.
+ ********************************************************************/
+public int getOptimizerIterationCount (
+) {
+	return(optimizerIterationCount);
+} /* end getOptimizerIterationCount */
+
+/*********************************************************************
+ Return the matrix that maps the current target landmarks onto the
+ current source landmarks.
+ ********************************************************************/
+public double[][] getTransformationMatrix (
+) {
+	return(getTransformationMatrix(targetPoint, sourcePoint));
+} /* end getTransformationMatrix */
+
 /*********************************************************************
  Save the current landmarks into a text file and return the path
  and name of the file. Rigid format.
@@ -6631,6 +7566,22 @@ public String saveTransformation (
 	return(path + filename);
 } /* end saveTransformation */
 
+/*********************************************************************
+ Choose how the mean-square error and its derivatives are summed over
+ the image during the rigid-body and translation optimizations. When
+ <code>true</code>, the rows are summed in bands of fixed size on a
+ fork-join pool and the band sums are merged in a fixed order. The
+ result does not depend on the number of threads, but it may differ
+ in its last bits from the sequential sum. The default is
+ <code>false</code>.
+ @param parallelReduction Sum the rows concurrently.
+ ********************************************************************/
+public void setParallelReduction (
+	final boolean parallelReduction
+) {
+	this.parallelReduction = parallelReduction;
+} /* end setParallelReduction */
+
 /*....................................................................
 	private methods
 ....................................................................*/
@@ -6645,30 +7596,22 @@ private void affineTransform (
 	int xMsk;
 	int yMsk;
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	yx = matrix[0][0];
 	yy = matrix[1][0];
 	for (int v = 0; (v < outNy); v++) {
 		x0 = yx;
 		y0 = yy;
 		for (int u = 0; (u < outNx); u++) {
-			x = x0;
-			y = y0;
-			xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+			xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+			yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 			if ((0 <= xMsk) && (xMsk < inNx) && (0 <= yMsk) && (yMsk < inNy)) {
 				xMsk += yMsk * inNx;
 				if (accelerated) {
 					outImg[k++] = inImg[xMsk];
 				}
 				else {
-					xIndexes();
-					yIndexes();
-					x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-					y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-					xWeights();
-					yWeights();
-					outImg[k++] = (float)interpolate();
+					outImg[k++] = (float)interpolate(x0, y0);
 				}
 			}
 			else {
@@ -6679,9 +7622,9 @@ private void affineTransform (
 		}
 		yx += matrix[0][2];
 		yy += matrix[1][2];
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* affineTransform */
 
 /*------------------------------------------------------------------*/
@@ -6696,30 +7639,22 @@ private void affineTransform (
 	int xMsk;
 	int yMsk;
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	yx = matrix[0][0];
 	yy = matrix[1][0];
 	for (int v = 0; (v < outNy); v++) {
 		x0 = yx;
 		y0 = yy;
 		for (int u = 0; (u < outNx); u++) {
-			x = x0;
-			y = y0;
-			xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+			xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+			yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 			if ((0 <= xMsk) && (xMsk < inNx) && (0 <= yMsk) && (yMsk < inNy)) {
 				xMsk += yMsk * inNx;
 				if (accelerated) {
 					outImg[k] = inImg[xMsk];
 				}
 				else {
-					xIndexes();
-					yIndexes();
-					x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-					y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-					xWeights();
-					yWeights();
-					outImg[k] = (float)interpolate();
+					outImg[k] = (float)interpolate(x0, y0);
 				}
 				outMsk[k++] = inMsk[xMsk];
 			}
@@ -6732,9 +7667,9 @@ private void affineTransform (
 		}
 		yx += matrix[0][2];
 		yy += matrix[1][2];
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* affineTransform */
 
 /*------------------------------------------------------------------*/
@@ -6750,7 +7685,7 @@ private void bilinearTransform (
 	int xMsk;
 	int yMsk;
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	yx = matrix[0][0];
 	yy = matrix[1][0];
 	yxy = 0.0;
@@ -6759,23 +7694,15 @@ private void bilinearTransform (
 		x0 = yx;
 		y0 = yy;
 		for (int u = 0; (u < outNx); u++) {
-			x = x0;
-			y = y0;
-			xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+			xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+			yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 			if ((0 <= xMsk) && (xMsk < inNx) && (0 <= yMsk) && (yMsk < inNy)) {
 				xMsk += yMsk * inNx;
 				if (accelerated) {
 					outImg[k++] = inImg[xMsk];
 				}
 				else {
-					xIndexes();
-					yIndexes();
-					x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-					y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-					xWeights();
-					yWeights();
-					outImg[k++] = (float)interpolate();
+					outImg[k++] = (float)interpolate(x0, y0);
 				}
 			}
 			else {
@@ -6788,9 +7715,9 @@ private void bilinearTransform (
 		yy += matrix[1][2];
 		yxy += matrix[0][3];
 		yyy += matrix[1][3];
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* bilinearTransform */
 
 /*------------------------------------------------------------------*/
@@ -6807,7 +7734,7 @@ private void bilinearTransform (
 	int xMsk;
 	int yMsk;
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	yx = matrix[0][0];
 	yy = matrix[1][0];
 	yxy = 0.0;
@@ -6816,23 +7743,15 @@ private void bilinearTransform (
 		x0 = yx;
 		y0 = yy;
 		for (int u = 0; (u < outNx); u++) {
-			x = x0;
-			y = y0;
-			xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+			xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+			yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 			if ((0 <= xMsk) && (xMsk < inNx) && (0 <= yMsk) && (yMsk < inNy)) {
 				xMsk += yMsk * inNx;
 				if (accelerated) {
 					outImg[k] = inImg[xMsk];
 				}
 				else {
-					xIndexes();
-					yIndexes();
-					x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-					y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-					xWeights();
-					yWeights();
-					outImg[k] = (float)interpolate();
+					outImg[k] = (float)interpolate(x0, y0);
 				}
 				outMsk[k++] = inMsk[xMsk];
 			}
@@ -6847,9 +7766,9 @@ private void bilinearTransform (
 		yy += matrix[1][2];
 		yxy += matrix[0][3];
 		yyy += matrix[1][3];
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* bilinearTransform */
 
 /*------------------------------------------------------------------*/
@@ -6895,6 +7814,19 @@ private void computeBilinearGradientConstants (
 	c3uv = (-u3 * v1 + u2 * v13 + u3 * v2 - u1 * v23) / det;
 } /* end computeBilinearGradientConstants */
 
+/*------------------------------------------------------------------*/
+private void cubicWeights (
+	final double fraction,
+	final double[] weight
+) {
+	double w = 1.0 - fraction;
+	weight[3] = w * w * w / 6.0;
+	w = fraction * fraction;
+	weight[2] = 2.0 / 3.0 - 0.5 * w * (2.0 - fraction);
+	weight[0] = w * fraction / 6.0;
+	weight[1] = 1.0 - weight[0] - weight[2] - weight[3];
+} /* end cubicWeights */
+
 /*------------------------------------------------------------------*/
 private double getAffineMeanSquares (
 	final double[][] sourcePoint,
@@ -6927,21 +7859,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 					}
 				}
@@ -6959,21 +7883,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 					}
 				}
@@ -7041,21 +7957,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						g0 = u23 * (double)v - v23 * (double)u + uv32;
 						g1 = u31 * (double)v - v31 * (double)u + uv13;
@@ -7088,21 +7996,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						g0 = u23 * (double)v - v23 * (double)u + uv32;
 						g1 = u31 * (double)v - v31 * (double)u + uv13;
@@ -7189,21 +8089,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						g0 = u23 * (double)v - v23 * (double)u + uv32;
 						g1 = u31 * (double)v - v31 * (double)u + uv13;
@@ -7257,21 +8149,13 @@ private double getAffineMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						g0 = u23 * (double)v - v23 * (double)u + uv32;
 						g1 = u31 * (double)v - v31 * (double)u + uv13;
@@ -7352,20 +8236,12 @@ private double getBilinearMeanSquares (
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
 				if (outMsk[k] != 0.0F) {
-					x = x0;
-					y = y0;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+					xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+					yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 					if ((0 <= xMsk) && (xMsk < inNx)
 						&& (0 <= yMsk) && (yMsk < inNy)) {
-						xIndexes();
-						yIndexes();
 						area++;
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = interpolate() - (double)outImg[k];
+						difference = interpolate(x0, y0) - (double)outImg[k];
 						meanSquares += difference * difference;
 					}
 				}
@@ -7387,22 +8263,14 @@ private double getBilinearMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					xMsk += yMsk * inNx;
 					if ((outMsk[k] * inMsk[xMsk]) != 0.0F) {
-						xIndexes();
-						yIndexes();
 						area++;
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = interpolate() - (double)outImg[k];
+						difference = interpolate(x0, y0) - (double)outImg[k];
 						meanSquares += difference * difference;
 					}
 				}
@@ -7447,6 +8315,7 @@ private double getBilinearMeanSquares (
 	double dy1;
 	double dy2;
 	double dy3;
+	final double[] sample = new double[3];
 	long area = 0L;
 	int xMsk;
 	int yMsk;
@@ -7468,23 +8337,16 @@ private double getBilinearMeanSquares (
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
 				if (outMsk[k] != 0.0F) {
-					x = x0;
-					y = y0;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+					xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+					yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 					if ((0 <= xMsk) && (xMsk < inNx)
 						&& (0 <= yMsk) && (yMsk < inNy)) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xDxWeights();
-						yDyWeights();
-						difference = interpolate() - (double)outImg[k];
+						interpolate(x0, y0, sample);
+						difference = sample[0] - (double)outImg[k];
 						meanSquares += difference * difference;
-						xGradient = interpolateDx();
-						yGradient = interpolateDy();
+						xGradient = sample[1];
+						yGradient = sample[2];
 						uv = (double)u * (double)v;
 						g0 = c0uv * uv + c0u * (double)u + c0v * (double)v + c0;
 						g1 = c1uv * uv + c1u * (double)u + c1v * (double)v + c1;
@@ -7562,25 +8424,18 @@ private double getBilinearMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					xMsk += yMsk * inNx;
 					if ((outMsk[k] * inMsk[xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xDxWeights();
-						yDyWeights();
-						difference = interpolate() - (double)outImg[k];
+						interpolate(x0, y0, sample);
+						difference = sample[0] - (double)outImg[k];
 						meanSquares += difference * difference;
-						xGradient = interpolateDx();
-						yGradient = interpolateDy();
+						xGradient = sample[1];
+						yGradient = sample[2];
 						uv = (double)u * (double)v;
 						g0 = c0uv * uv + c0u * (double)u + c0v * (double)v + c0;
 						g1 = c1uv * uv + c1u * (double)u + c1v * (double)v + c1;
@@ -7661,293 +8516,125 @@ private double getBilinearMeanSquares (
 private double getRigidBodyMeanSquares (
 	final double[][] matrix
 ) {
-	double yx;
-	double yy;
-	double x0;
-	double y0;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
-	if (outMsk == null) {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
-						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
-						meanSquares += difference * difference;
-					}
-				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
+	final double[] sums = getRigidBodySums(matrix, 0);
+	return(sums[0] / sums[1]);
+} /* getRigidBodyMeanSquares */
+
+/*------------------------------------------------------------------*/
+private double getRigidBodyMeanSquares (
+	final double[][] matrix,
+	final double[] gradient
+) {
+	final double[] sums = getRigidBodySums(matrix, 1);
+	for (int i = 0; (i < transformation); i++) {
+		gradient[i] = sums[2 + i];
+	}
+	return(sums[0] / sums[1]);
+} /* getRigidBodyMeanSquares */
+
+/*------------------------------------------------------------------*/
+private double getRigidBodyMeanSquares (
+	final double[][] matrix,
+	final double[][] hessian,
+	final double[] gradient
+) {
+	final double[] sums = getRigidBodySums(matrix, 2);
+	for (int i = 0; (i < transformation); i++) {
+		gradient[i] = sums[2 + i];
+	}
+	for (int i = 0, k = 2 + transformation; (i < transformation); i++) {
+		for (int j = i; (j < transformation); j++, k++) {
+			hessian[i][j] = sums[k];
 		}
 	}
-	else {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
-						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
-						meanSquares += difference * difference;
-					}
-				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
-		}
-	}
-	return(meanSquares / (double)area);
-} /* getRigidBodyMeanSquares */
-
-/*------------------------------------------------------------------*/
-private double getRigidBodyMeanSquares (
-	final double[][] matrix,
-	final double[] gradient
-
-) {
-	double yx;
-	double yy;
-	double x0;
-	double y0;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
-	for (int i = 0; (i < transformation); i++) {
-		gradient[i] = 0.0;
-	}
-	if (outMsk == null) {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
-						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
-						meanSquares += difference * difference;
-						gradient[0] += difference * (yGradient[k] * (double)u
-							- xGradient[k] * (double)v);
-						gradient[1] += difference * xGradient[k];
-						gradient[2] += difference * yGradient[k];
-					}
-				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
-		}
-	}
-	else {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
-						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
-						meanSquares += difference * difference;
-						gradient[0] += difference * (yGradient[k] * (double)u
-							- xGradient[k] * (double)v);
-						gradient[1] += difference * xGradient[k];
-						gradient[2] += difference * yGradient[k];
-					}
-				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
+	for (int i = 1; (i < transformation); i++) {
+		for (int j = 0; (j < i); j++) {
+			hessian[i][j] = hessian[j][i];
 		}
 	}
-	return(meanSquares / (double)area);
+	return(sums[0] / sums[1]);
 } /* getRigidBodyMeanSquares */
 
 /*------------------------------------------------------------------*/
-private double getRigidBodyMeanSquares (
+private double[] getRigidBodySums (
 	final double[][] matrix,
-	final double[][] hessian,
-	final double[] gradient
+	final int order
 ) {
-	double yx;
-	double yy;
-	double x0;
-	double y0;
-	double dTheta;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
-	for (int i = 0; (i < transformation); i++) {
-		gradient[i] = 0.0;
-		for (int j = 0; (j < transformation); j++) {
-			hessian[i][j] = 0.0;
-		}
-	}
-	if (outMsk == null) {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
-						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
-						meanSquares += difference * difference;
-						dTheta = yGradient[k] * (double)u
-							- xGradient[k] * (double)v;
-						gradient[0] += difference * dTheta;
-						gradient[1] += difference * xGradient[k];
-						gradient[2] += difference * yGradient[k];
-						hessian[0][0] += dTheta * dTheta;
-						hessian[0][1] += dTheta * xGradient[k];
-						hessian[0][2] += dTheta * yGradient[k];
-						hessian[1][1] += xGradient[k] * xGradient[k];
-						hessian[1][2] += xGradient[k] * yGradient[k];
-						hessian[2][2] += yGradient[k] * yGradient[k];
-					}
-				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
-		}
-	}
-	else {
-		yx = matrix[0][0];
-		yy = matrix[1][0];
-		for (int v = 0; (v < outNy); v++) {
-			x0 = yx;
-			y0 = yy;
-			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-				if ((0 <= xMsk) && (xMsk < inNx)
-					&& (0 <= yMsk) && (yMsk < inNy)) {
-					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
+	return(new turboRegBandSum() {
+		public void accumulate (
+			final int first,
+			final int last,
+			final double[] sums
+		) {
+			double yx = matrix[0][0] + (double)first * matrix[0][2];
+			double yy = matrix[1][0] + (double)first * matrix[1][2];
+			double x0;
+			double y0;
+			double dTheta;
+			double difference;
+			double meanSquares = 0.0;
+			double gradient0 = 0.0;
+			double gradient1 = 0.0;
+			double gradient2 = 0.0;
+			double hessian00 = 0.0;
+			double hessian01 = 0.0;
+			double hessian02 = 0.0;
+			double hessian11 = 0.0;
+			double hessian12 = 0.0;
+			double hessian22 = 0.0;
+			long area = 0L;
+			int xMsk;
+			int yMsk;
+			int k = first * outNx;
+			for (int v = first; (v < last); v++) {
+				x0 = yx;
+				y0 = yy;
+				for (int u = 0; (u < outNx); u++, k++) {
+					xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+					yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
+					if ((0 <= xMsk) && (xMsk < inNx)
+						&& (0 <= yMsk) && (yMsk < inNy)
+						&& (inMsk[yMsk * inNx + xMsk] != 0.0F)
+						&& ((outMsk == null) || (outMsk[k] != 0.0F))) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
-						dTheta = yGradient[k] * (double)u
-							- xGradient[k] * (double)v;
-						gradient[0] += difference * dTheta;
-						gradient[1] += difference * xGradient[k];
-						gradient[2] += difference * yGradient[k];
-						hessian[0][0] += dTheta * dTheta;
-						hessian[0][1] += dTheta * xGradient[k];
-						hessian[0][2] += dTheta * yGradient[k];
-						hessian[1][1] += xGradient[k] * xGradient[k];
-						hessian[1][2] += xGradient[k] * yGradient[k];
-						hessian[2][2] += yGradient[k] * yGradient[k];
+						if (0 < order) {
+							dTheta = yGradient[k] * (double)u
+								- xGradient[k] * (double)v;
+							gradient0 += difference * dTheta;
+							gradient1 += difference * xGradient[k];
+							gradient2 += difference * yGradient[k];
+							if (1 < order) {
+								hessian00 += dTheta * dTheta;
+								hessian01 += dTheta * xGradient[k];
+								hessian02 += dTheta * yGradient[k];
+								hessian11 += xGradient[k] * xGradient[k];
+								hessian12 += xGradient[k] * yGradient[k];
+								hessian22 += yGradient[k] * yGradient[k];
+							}
+						}
 					}
+					x0 += matrix[0][1];
+					y0 += matrix[1][1];
 				}
-				x0 += matrix[0][1];
-				y0 += matrix[1][1];
-			}
-			yx += matrix[0][2];
-			yy += matrix[1][2];
-		}
-	}
-	for (int i = 1; (i < transformation); i++) {
-		for (int j = 0; (j < i); j++) {
-			hessian[i][j] = hessian[j][i];
-		}
-	}
-	return(meanSquares / (double)area);
-} /* getRigidBodyMeanSquares */
+				yx += matrix[0][2];
+				yy += matrix[1][2];
+			}
+			sums[0] += meanSquares;
+			sums[1] += (double)area;
+			sums[2] += gradient0;
+			sums[3] += gradient1;
+			sums[4] += gradient2;
+			sums[5] += hessian00;
+			sums[6] += hessian01;
+			sums[7] += hessian02;
+			sums[8] += hessian11;
+			sums[9] += hessian12;
+			sums[10] += hessian22;
+		}
+	}.run(outNy, 11, parallelReduction));
+} /* getRigidBodySums */
 
 /*------------------------------------------------------------------*/
 private double getScaledRotationMeanSquares (
@@ -7978,21 +8665,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 					}
 				}
@@ -8010,21 +8689,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 					}
 				}
@@ -8098,21 +8769,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						gxx0 = (double)u * c1 + (double)v * c2 - dgxx0;
 						gyx0 = (double)v * c1 - (double)u * c2 + dgyx0;
@@ -8146,21 +8809,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						gxx0 = (double)u * c1 + (double)v * c2 - dgxx0;
 						gyx0 = (double)v * c1 - (double)u * c2 + dgyx0;
@@ -8254,21 +8909,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if (inMsk[yMsk * inNx + xMsk] != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						gxx0 = (double)u * c1 + (double)v * c2 - dgxx0;
 						gyx0 = (double)v * c1 - (double)u * c2 + dgyx0;
@@ -8312,21 +8959,13 @@ private double getScaledRotationMeanSquares (
 			x0 = yx;
 			y0 = yy;
 			for (int u = 0; (u < outNx); u++, k++) {
-				x = x0;
-				y = y0;
-				xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-				yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
+				xMsk = (0.0 <= x0) ? ((int)(x0 + 0.5)) : ((int)(x0 - 0.5));
+				yMsk = (0.0 <= y0) ? ((int)(y0 + 0.5)) : ((int)(y0 - 0.5));
 				if ((0 <= xMsk) && (xMsk < inNx)
 					&& (0 <= yMsk) && (yMsk < inNy)) {
 					if ((outMsk[k] * inMsk[yMsk * inNx + xMsk]) != 0.0F) {
 						area++;
-						xIndexes();
-						yIndexes();
-						x -= (0.0 <= x) ? ((int)x) : ((int)x - 1);
-						y -= (0.0 <= y) ? ((int)y) : ((int)y - 1);
-						xWeights();
-						yWeights();
-						difference = (double)outImg[k] - interpolate();
+						difference = (double)outImg[k] - interpolate(x0, y0);
 						meanSquares += difference * difference;
 						gxx0 = (double)u * c1 + (double)v * c2 - dgxx0;
 						gyx0 = (double)v * c1 - (double)u * c2 + dgyx0;
@@ -8523,72 +9162,8 @@ private double[][] getTransformationMatrix (
 private double getTranslationMeanSquares (
 	final double[][] matrix
 ) {
-	double dx = matrix[0][0];
-	double dy = matrix[1][0];
-	final double dx0 = dx;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
-	x = dx - Math.floor(dx);
-	y = dy - Math.floor(dy);
-	xWeights();
-	yWeights();
-	if (outMsk == null) {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if (inMsk[yMsk + xMsk] != 0.0F) {
-							xIndexes();
-							area++;
-							difference = (double)outImg[k] - interpolate();
-							meanSquares += difference * difference;
-						}
-					}
-				}
-			}
-			else {
-				k += outNx;
-			}
-		}
-	}
-	else {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if ((outMsk[k] * inMsk[yMsk + xMsk]) != 0.0F) {
-							xIndexes();
-							area++;
-							difference = (double)outImg[k] - interpolate();
-							meanSquares += difference * difference;
-						}
-					}
-				}
-			}
-			else {
-				k += outNx;
-			}
-		}
-	}
-	return(meanSquares / (double)area);
+	final double[] sums = getTranslationSums(matrix, 0);
+	return(sums[0] / sums[1]);
 } /* end getTranslationMeanSquares */
 
 /*------------------------------------------------------------------*/
@@ -8596,79 +9171,11 @@ private double getTranslationMeanSquares (
 	final double[][] matrix,
 	final double[] gradient
 ) {
-	double dx = matrix[0][0];
-	double dy = matrix[1][0];
-	final double dx0 = dx;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
+	final double[] sums = getTranslationSums(matrix, 1);
 	for (int i = 0; (i < transformation); i++) {
-		gradient[i] = 0.0;
+		gradient[i] = sums[2 + i];
 	}
-	x = dx - Math.floor(dx);
-	y = dy - Math.floor(dy);
-	xWeights();
-	yWeights();
-	if (outMsk == null) {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if (inMsk[yMsk + xMsk] != 0.0F) {
-							area++;
-							xIndexes();
-							difference = (double)outImg[k] - interpolate();
-							meanSquares += difference * difference;
-							gradient[0] += difference * xGradient[k];
-							gradient[1] += difference * yGradient[k];
-						}
-					}
-				}
-			}
-			else {
-				k += outNx;
-			}
-		}
-	}
-	else {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if ((outMsk[k] * inMsk[yMsk + xMsk]) != 0.0F) {
-							area++;
-							xIndexes();
-							difference = (double)outImg[k] - interpolate();
-							meanSquares += difference * difference;
-							gradient[0] += difference * xGradient[k];
-							gradient[1] += difference * yGradient[k];
-						}
-					}
-				}
-			}
-			else {
-				k += outNx;
-			}
-		}
-	}
-	return(meanSquares / (double)area);
+	return(sums[0] / sums[1]);
 } /* end getTranslationMeanSquares */
 
 /*------------------------------------------------------------------*/
@@ -8677,94 +9184,109 @@ private double getTranslationMeanSquares (
 	final double[][] hessian,
 	final double[] gradient
 ) {
-	double dx = matrix[0][0];
-	double dy = matrix[1][0];
-	final double dx0 = dx;
-	double difference;
-	double meanSquares = 0.0;
-	long area = 0L;
-	int xMsk;
-	int yMsk;
-	int k = 0;
+	final double[] sums = getTranslationSums(matrix, 2);
 	for (int i = 0; (i < transformation); i++) {
-		gradient[i] = 0.0;
-		for (int j = 0; (j < transformation); j++) {
-			hessian[i][j] = 0.0;
+		gradient[i] = sums[2 + i];
+	}
+	for (int i = 0, k = 2 + transformation; (i < transformation); i++) {
+		for (int j = i; (j < transformation); j++, k++) {
+			hessian[i][j] = sums[k];
 		}
 	}
-	x = dx - Math.floor(dx);
-	y = dy - Math.floor(dy);
-	xWeights();
-	yWeights();
-	if (outMsk == null) {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if (inMsk[yMsk + xMsk] != 0.0F) {
-							area++;
-							xIndexes();
-							difference = (double)outImg[k] - interpolate();
-							meanSquares += difference * difference;
-							gradient[0] += difference * xGradient[k];
-							gradient[1] += difference * yGradient[k];
-							hessian[0][0] += xGradient[k] * xGradient[k];
-							hessian[0][1] += xGradient[k] * yGradient[k];
-							hessian[1][1] += yGradient[k] * yGradient[k];
-						}
-					}
-				}
-			}
-			else {
-				k += outNx;
-			}
+	for (int i = 1; (i < transformation); i++) {
+		for (int j = 0; (j < i); j++) {
+			hessian[i][j] = hessian[j][i];
 		}
 	}
-	else {
-		for (int v = 0; (v < outNy); v++) {
-			y = dy++;
-			yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
-			if ((0 <= yMsk) && (yMsk < inNy)) {
-				yMsk *= inNx;
-				yIndexes();
-				dx = dx0;
-				for (int u = 0; (u < outNx); u++, k++) {
-					x = dx++;
-					xMsk = (0.0 <= x) ? ((int)(x + 0.5)) : ((int)(x - 0.5));
-					if ((0 <= xMsk) && (xMsk < inNx)) {
-						if ((outMsk[k] * inMsk[yMsk + xMsk]) != 0.0F) {
+	return(sums[0] / sums[1]);
+} /* end getTranslationMeanSquares */
+
+/*------------------------------------------------------------------*/
+private double[] getTranslationSums (
+	final double[][] matrix,
+	final int order
+) {
+	return(new turboRegBandSum() {
+		public void accumulate (
+			final int first,
+			final int last,
+			final double[] sums
+		) {
+			final double[] xWeight = new double[4];
+			final double[] yWeight = new double[4];
+			final int[] column = new int[4];
+			final int[] row = new int[4];
+			double dx;
+			double dy = matrix[1][0] + (double)first;
+			double xSample;
+			double ySample;
+			double difference;
+			double meanSquares = 0.0;
+			double gradient0 = 0.0;
+			double gradient1 = 0.0;
+			double hessian00 = 0.0;
+			double hessian01 = 0.0;
+			double hessian11 = 0.0;
+			long area = 0L;
+			int xMsk;
+			int yMsk;
+			int p;
+			int k = first * outNx;
+			cubicWeights(matrix[0][0] - Math.floor(matrix[0][0]), xWeight);
+			cubicWeights(matrix[1][0] - Math.floor(matrix[1][0]), yWeight);
+			for (int v = first; (v < last); v++) {
+				ySample = dy++;
+				yMsk = (0.0 <= ySample) ? ((int)(ySample + 0.5))
+					: ((int)(ySample - 0.5));
+				if ((0 <= yMsk) && (yMsk < inNy)) {
+					yMsk *= inNx;
+					p = (0.0 <= ySample) ? ((int)ySample + 2) : ((int)ySample + 1);
+					for (int j = 0; (j < 4); p--, j++) {
+						row[j] = yMirror(p);
+					}
+					dx = matrix[0][0];
+					for (int u = 0; (u < outNx); u++, k++) {
+						xSample = dx++;
+						xMsk = (0.0 <= xSample) ? ((int)(xSample + 0.5))
+							: ((int)(xSample - 0.5));
+						if ((0 <= xMsk) && (xMsk < inNx)
+							&& (inMsk[yMsk + xMsk] != 0.0F)
+							&& ((outMsk == null) || (outMsk[k] != 0.0F))) {
 							area++;
-							xIndexes();
-							difference = (double)outImg[k] - interpolate();
+							p = (0.0 <= xSample) ? ((int)xSample + 2)
+								: ((int)xSample + 1);
+							for (int i = 0; (i < 4); p--, i++) {
+								column[i] = xMirror(p);
+							}
+							difference = (double)outImg[k]
+								- interpolate(xWeight, yWeight, column, row);
 							meanSquares += difference * difference;
-							gradient[0] += difference * xGradient[k];
-							gradient[1] += difference * yGradient[k];
-							hessian[0][0] += xGradient[k] * xGradient[k];
-							hessian[0][1] += xGradient[k] * yGradient[k];
-							hessian[1][1] += yGradient[k] * yGradient[k];
+							if (0 < order) {
+								gradient0 += difference * xGradient[k];
+								gradient1 += difference * yGradient[k];
+								if (1 < order) {
+									hessian00 += xGradient[k] * xGradient[k];
+									hessian01 += xGradient[k] * yGradient[k];
+									hessian11 += yGradient[k] * yGradient[k];
+								}
+							}
 						}
 					}
 				}
+				else {
+					k += outNx;
+				}
 			}
-			else {
-				k += outNx;
-			}
-		}
-	}
-	for (int i = 1; (i < transformation); i++) {
-		for (int j = 0; (j < i); j++) {
-			hessian[i][j] = hessian[j][i];
+			sums[0] += meanSquares;
+			sums[1] += (double)area;
+			sums[2] += gradient0;
+			sums[3] += gradient1;
+			sums[4] += hessian00;
+			sums[5] += hessian01;
+			sums[6] += hessian11;
 		}
-	}
-	return(meanSquares / (double)area);
-} /* end getTranslationMeanSquares */
+	}.run(outNy, 7, parallelReduction));
+} /* end getTranslationSums */
 
 /*------------------------------------------------------------------*/
 private double interpolate (
@@ -8782,34 +9304,192 @@ private double interpolate (
 } /* end interpolate */
 
 /*------------------------------------------------------------------*/
-private double interpolateDx (
-) {
-	t = 0.0;
-	for (int j = 0; (j < 4); j++) {
-		s = 0.0;
-		p = yIndex[j];
-		for (int i = 0; (i < 4); i++) {
-			s += dxWeight[i] * (double)inImg[p + xIndex[i]];
-		}
-		t += yWeight[j] * s;
+private double interpolate (
+	final double x,
+	final double y
+) {
+	final int xBase = (0.0 <= x) ? ((int)x + 2) : ((int)x + 1);
+	final int yBase = (0.0 <= y) ? ((int)y + 2) : ((int)y + 1);
+	final int x0;
+	final int x1;
+	final int x2;
+	final int x3;
+	final int y0;
+	final int y1;
+	final int y2;
+	final int y3;
+	if ((3 <= xBase) && (xBase < inNx)) {
+		x0 = xBase;
+		x1 = xBase - 1;
+		x2 = xBase - 2;
+		x3 = xBase - 3;
 	}
-	return(t);
-} /* end interpolateDx */
+	else {
+		x0 = xMirror(xBase);
+		x1 = xMirror(xBase - 1);
+		x2 = xMirror(xBase - 2);
+		x3 = xMirror(xBase - 3);
+	}
+	if ((3 <= yBase) && (yBase < inNy)) {
+		y0 = yBase * inNx;
+		y1 = y0 - inNx;
+		y2 = y1 - inNx;
+		y3 = y2 - inNx;
+	}
+	else {
+		y0 = yMirror(yBase);
+		y1 = yMirror(yBase - 1);
+		y2 = yMirror(yBase - 2);
+		y3 = yMirror(yBase - 3);
+	}
+	final double u = x - ((0.0 <= x) ? ((int)x) : ((int)x - 1));
+	final double v = y - ((0.0 <= y) ? ((int)y) : ((int)y - 1));
+	double w = 1.0 - u;
+	final double xWeight3 = w * w * w / 6.0;
+	w = u * u;
+	final double xWeight2 = 2.0 / 3.0 - 0.5 * w * (2.0 - u);
+	final double xWeight0 = w * u / 6.0;
+	final double xWeight1 = 1.0 - xWeight0 - xWeight2 - xWeight3;
+	w = 1.0 - v;
+	final double yWeight3 = w * w * w / 6.0;
+	w = v * v;
+	final double yWeight2 = 2.0 / 3.0 - 0.5 * w * (2.0 - v);
+	final double yWeight0 = w * v / 6.0;
+	final double yWeight1 = 1.0 - yWeight0 - yWeight2 - yWeight3;
+	return(yWeight0 * (xWeight0 * (double)inImg[y0 + x0]
+		+ xWeight1 * (double)inImg[y0 + x1]
+		+ xWeight2 * (double)inImg[y0 + x2]
+		+ xWeight3 * (double)inImg[y0 + x3])
+		+ yWeight1 * (xWeight0 * (double)inImg[y1 + x0]
+		+ xWeight1 * (double)inImg[y1 + x1]
+		+ xWeight2 * (double)inImg[y1 + x2]
+		+ xWeight3 * (double)inImg[y1 + x3])
+		+ yWeight2 * (xWeight0 * (double)inImg[y2 + x0]
+		+ xWeight1 * (double)inImg[y2 + x1]
+		+ xWeight2 * (double)inImg[y2 + x2]
+		+ xWeight3 * (double)inImg[y2 + x3])
+		+ yWeight3 * (xWeight0 * (double)inImg[y3 + x0]
+		+ xWeight1 * (double)inImg[y3 + x1]
+		+ xWeight2 * (double)inImg[y3 + x2]
+		+ xWeight3 * (double)inImg[y3 + x3]));
+} /* end interpolate */
 
 /*------------------------------------------------------------------*/
-private double interpolateDy (
+private void interpolate (
+	final double x,
+	final double y,
+	final double[] sample
+) {
+	final int xBase = (0.0 <= x) ? ((int)x + 2) : ((int)x + 1);
+	final int yBase = (0.0 <= y) ? ((int)y + 2) : ((int)y + 1);
+	final int x0;
+	final int x1;
+	final int x2;
+	final int x3;
+	final int y0;
+	final int y1;
+	final int y2;
+	final int y3;
+	if ((3 <= xBase) && (xBase < inNx)) {
+		x0 = xBase;
+		x1 = xBase - 1;
+		x2 = xBase - 2;
+		x3 = xBase - 3;
+	}
+	else {
+		x0 = xMirror(xBase);
+		x1 = xMirror(xBase - 1);
+		x2 = xMirror(xBase - 2);
+		x3 = xMirror(xBase - 3);
+	}
+	if ((3 <= yBase) && (yBase < inNy)) {
+		y0 = yBase * inNx;
+		y1 = y0 - inNx;
+		y2 = y1 - inNx;
+		y3 = y2 - inNx;
+	}
+	else {
+		y0 = yMirror(yBase);
+		y1 = yMirror(yBase - 1);
+		y2 = yMirror(yBase - 2);
+		y3 = yMirror(yBase - 3);
+	}
+	final double u = x - ((0.0 <= x) ? ((int)x) : ((int)x - 1));
+	final double v = y - ((0.0 <= y) ? ((int)y) : ((int)y - 1));
+	double w = 1.0 - u;
+	final double dxWeight0 = 0.5 * u * u;
+	final double xWeight0 = u * dxWeight0 / 3.0;
+	final double dxWeight3 = -0.5 * w * w;
+	final double xWeight3 = w * dxWeight3 / -3.0;
+	final double dxWeight1 = 1.0 - 2.0 * dxWeight0 + dxWeight3;
+	final double xWeight1 = 2.0 / 3.0 + (1.0 + u) * dxWeight3;
+	final double dxWeight2 = 1.5 * u * (u - 4.0/ 3.0);
+	final double xWeight2 = 2.0 / 3.0 - (2.0 - u) * dxWeight0;
+	w = 1.0 - v;
+	final double dyWeight0 = 0.5 * v * v;
+	final double yWeight0 = v * dyWeight0 / 3.0;
+	final double dyWeight3 = -0.5 * w * w;
+	final double yWeight3 = w * dyWeight3 / -3.0;
+	final double dyWeight1 = 1.0 - 2.0 * dyWeight0 + dyWeight3;
+	final double yWeight1 = 2.0 / 3.0 + (1.0 + v) * dyWeight3;
+	final double dyWeight2 = 1.5 * v * (v - 4.0/ 3.0);
+	final double yWeight2 = 2.0 / 3.0 - (2.0 - v) * dyWeight0;
+	double f0 = (double)inImg[y0 + x0];
+	double f1 = (double)inImg[y0 + x1];
+	double f2 = (double)inImg[y0 + x2];
+	double f3 = (double)inImg[y0 + x3];
+	final double s0 = xWeight0 * f0 + xWeight1 * f1 + xWeight2 * f2
+		+ xWeight3 * f3;
+	final double d0 = dxWeight0 * f0 + dxWeight1 * f1 + dxWeight2 * f2
+		+ dxWeight3 * f3;
+	f0 = (double)inImg[y1 + x0];
+	f1 = (double)inImg[y1 + x1];
+	f2 = (double)inImg[y1 + x2];
+	f3 = (double)inImg[y1 + x3];
+	final double s1 = xWeight0 * f0 + xWeight1 * f1 + xWeight2 * f2
+		+ xWeight3 * f3;
+	final double d1 = dxWeight0 * f0 + dxWeight1 * f1 + dxWeight2 * f2
+		+ dxWeight3 * f3;
+	f0 = (double)inImg[y2 + x0];
+	f1 = (double)inImg[y2 + x1];
+	f2 = (double)inImg[y2 + x2];
+	f3 = (double)inImg[y2 + x3];
+	final double s2 = xWeight0 * f0 + xWeight1 * f1 + xWeight2 * f2
+		+ xWeight3 * f3;
+	final double d2 = dxWeight0 * f0 + dxWeight1 * f1 + dxWeight2 * f2
+		+ dxWeight3 * f3;
+	f0 = (double)inImg[y3 + x0];
+	f1 = (double)inImg[y3 + x1];
+	f2 = (double)inImg[y3 + x2];
+	f3 = (double)inImg[y3 + x3];
+	final double s3 = xWeight0 * f0 + xWeight1 * f1 + xWeight2 * f2
+		+ xWeight3 * f3;
+	final double d3 = dxWeight0 * f0 + dxWeight1 * f1 + dxWeight2 * f2
+		+ dxWeight3 * f3;
+	sample[0] = yWeight0 * s0 + yWeight1 * s1 + yWeight2 * s2 + yWeight3 * s3;
+	sample[1] = yWeight0 * d0 + yWeight1 * d1 + yWeight2 * d2 + yWeight3 * d3;
+	sample[2] = dyWeight0 * s0 + dyWeight1 * s1 + dyWeight2 * s2
+		+ dyWeight3 * s3;
+} /* end interpolate */
+
+/*------------------------------------------------------------------*/
+private double interpolate (
+	final double[] xWeight,
+	final double[] yWeight,
+	final int[] column,
+	final int[] row
 ) {
-	t = 0.0;
+	double sum = 0.0;
 	for (int j = 0; (j < 4); j++) {
-		s = 0.0;
-		p = yIndex[j];
+		double rowSum = 0.0;
+		final int offset = row[j];
 		for (int i = 0; (i < 4); i++) {
-			s += xWeight[i] * (double)inImg[p + xIndex[i]];
+			rowSum += xWeight[i] * (double)inImg[offset + column[i]];
 		}
-		t += dyWeight[j] * s;
+		sum += yWeight[j] * rowSum;
 	}
-	return(t);
-} /* end interpolateDy */
+	return(sum);
+} /* end interpolate */
 
 /*------------------------------------------------------------------*/
 private void inverseMarquardtLevenbergOptimization (
@@ -8909,7 +9589,7 @@ private void inverseMarquardtLevenbergOptimization (
 		else {
 			lambda *= LAMBDA_MAGSTEP;
 		}
-		turboRegProgressBar.skipProgressBar(iterationCost);
+		progressBar.skipProgressBar(iterationCost);
 		workload--;
 	} while ((iteration < (maxIterations * iterationPower - 1))
 		&& (pixelPrecision <= displacement));
@@ -8943,7 +9623,8 @@ private void inverseMarquardtLevenbergOptimization (
 			sourcePoint[k][1] = attempt[k][1];
 		}
 	}
-	turboRegProgressBar.skipProgressBar(workload * iterationCost);
+	optimizerIterationCount += iteration;
+	progressBar.skipProgressBar(workload * iterationCost);
 } /* end inverseMarquardtLevenbergOptimization */
 
 /*------------------------------------------------------------------*/
@@ -9012,7 +9693,7 @@ private void inverseMarquardtLevenbergRigidBodyOptimization (
 		else {
 			lambda *= LAMBDA_MAGSTEP;
 		}
-		turboRegProgressBar.skipProgressBar(iterationCost);
+		progressBar.skipProgressBar(iterationCost);
 		workload--;
 	} while ((iteration < (maxIterations * iterationPower - 1))
 		&& (pixelPrecision <= displacement));
@@ -9044,7 +9725,8 @@ private void inverseMarquardtLevenbergRigidBodyOptimization (
 		sourcePoint[k][1] = (targetPoint[k][0] - matrix[0][0]) * matrix[0][2]
 			+ (targetPoint[k][1] - matrix[1][0]) * matrix[1][2];
 	}
-	turboRegProgressBar.skipProgressBar(workload * iterationCost);
+	optimizerIterationCount += iteration;
+	progressBar.skipProgressBar(workload * iterationCost);
 } /* end inverseMarquardtLevenbergRigidBodyOptimization */
 
 /*------------------------------------------------------------------*/
@@ -9167,7 +9849,7 @@ private void marquardtLevenbergOptimization (
 		else {
 			lambda *= LAMBDA_MAGSTEP;
 		}
-		turboRegProgressBar.skipProgressBar(iterationCost);
+		progressBar.skipProgressBar(iterationCost);
 		workload--;
 	} while ((iteration < (maxIterations * iterationPower - 1))
 		&& (pixelPrecision <= displacement));
@@ -9186,7 +9868,8 @@ private void marquardtLevenbergOptimization (
 			sourcePoint[k][1] = attempt[k][1];
 		}
 	}
-	turboRegProgressBar.skipProgressBar(workload * iterationCost);
+	optimizerIterationCount += iteration;
+	progressBar.skipProgressBar(workload * iterationCost);
 } /* end marquardtLevenbergOptimization */
 
 /*------------------------------------------------------------------*/
@@ -9264,7 +9947,7 @@ private void translationTransform (
 		yWeights();
 	}
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	for (int v = 0; (v < outNy); v++) {
 		y = dy++;
 		yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
@@ -9297,9 +9980,9 @@ private void translationTransform (
 				outImg[k++] = 0.0F;
 			}
 		}
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* translationTransform */
 
 /*------------------------------------------------------------------*/
@@ -9319,7 +10002,7 @@ private void translationTransform (
 		yWeights();
 	}
 	int k = 0;
-	turboRegProgressBar.addWorkload(outNy);
+	progressBar.addWorkload(outNy);
 	for (int v = 0; (v < outNy); v++) {
 		y = dy++;
 		yMsk = (0.0 <= y) ? ((int)(y + 0.5)) : ((int)(y - 0.5));
@@ -9355,25 +10038,11 @@ private void translationTransform (
 				outMsk[k] = 0.0F;
 			}
 		}
-		turboRegProgressBar.stepProgressBar();
+		progressBar.stepProgressBar();
 	}
-	turboRegProgressBar.workloadDone(outNy);
+	progressBar.workloadDone(outNy);
 } /* translationTransform */
 
-/*------------------------------------------------------------------*/
-private void xDxWeights (
-) {
-	s = 1.0 - x;
-	dxWeight[0] = 0.5 * x * x;
-	xWeight[0] = x * dxWeight[0] / 3.0;
-	dxWeight[3] = -0.5 * s * s;
-	xWeight[3] = s * dxWeight[3] / -3.0;
-	dxWeight[1] = 1.0 - 2.0 * dxWeight[0] + dxWeight[3];
-	xWeight[1] = 2.0 / 3.0 + (1.0 + x) * dxWeight[3];
-	dxWeight[2] = 1.5 * x * (x - 4.0/ 3.0);
-	xWeight[2] = 2.0 / 3.0 - (2.0 - x) * dxWeight[0];
-} /* xDxWeights */
-
 /*------------------------------------------------------------------*/
 private void xIndexes (
 ) {
@@ -9387,6 +10056,17 @@ private void xIndexes (
 	}
 } /* xIndexes */
 
+/*------------------------------------------------------------------*/
+private int xMirror (
+	final int p
+) {
+	int q = (p < 0) ? (-1 - p) : (p);
+	if (twiceInNx <= q) {
+		q -= twiceInNx * (q / twiceInNx);
+	}
+	return((inNx <= q) ? (twiceInNx - 1 - q) : (q));
+} /* xMirror */
+
 /*------------------------------------------------------------------*/
 private void xWeights (
 ) {
@@ -9398,20 +10078,6 @@ private void xWeights (
 	xWeight[1] = 1.0 - xWeight[0] - xWeight[2] - xWeight[3];
 } /* xWeights */
 
-/*------------------------------------------------------------------*/
-private void yDyWeights (
-) {
-	t = 1.0 - y;
-	dyWeight[0] = 0.5 * y * y;
-	yWeight[0] = y * dyWeight[0] / 3.0;
-	dyWeight[3] = -0.5 * t * t;
-	yWeight[3] = t * dyWeight[3] / -3.0;
-	dyWeight[1] = 1.0 - 2.0 * dyWeight[0] + dyWeight[3];
-	yWeight[1] = 2.0 / 3.0 + (1.0 + y) * dyWeight[3];
-	dyWeight[2] = 1.5 * y * (y - 4.0/ 3.0);
-	yWeight[2] = 2.0 / 3.0 - (2.0 - y) * dyWeight[0];
-} /* yDyWeights */
-
 /*------------------------------------------------------------------*/
 private void yIndexes (
 ) {
@@ -9425,6 +10091,17 @@ private void yIndexes (
 	}
 } /* yIndexes */
 
+/*------------------------------------------------------------------*/
+private int yMirror (
+	final int p
+) {
+	int q = (p < 0) ? (-1 - p) : (p);
+	if (twiceInNy <= q) {
+		q -= twiceInNy * (q / twiceInNy);
+	}
+	return((inNy <= q) ? ((twiceInNy - 1 - q) * inNx) : (q * inNx));
+} /* yMirror */
+
 /*------------------------------------------------------------------*/
 private void yWeights (
 ) {
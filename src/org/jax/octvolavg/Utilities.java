@@ -3,8 +3,9 @@ package org.jax.octvolavg;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.VirtualStack;
+import ij.io.FileInfo;
 import ij.io.TiffEncoder;
-import ij.plugin.ZProjector;
 import ij.plugin.filter.AVI_Writer;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
@@ -22,6 +23,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,22 +64,103 @@ public class Utilities {
     }
     
     public static void safeRenderAsTIFF(ImagePlus img, File tiffOutFile, DocumentLogger docLogger) throws IOException {
+        int bitDepth = img.getBitDepth();
+        boolean gray = bitDepth == 8 || bitDepth == 16 || bitDepth == 32;
         if(tiffOutFile.exists()) {
             docLogger.println(
                     tiffOutFile.getAbsolutePath() +
                     " already exists. Refusing to overwrite.");
+        } else if(gray && TIFFStackWriter.needsBigTIFF(img.getWidth(), img.getHeight(), bitDepth, img.getStackSize())) {
+            // the ImageJ encoder can only write classic TIFF which is limited
+            // to 4 GB so we stream big stacks out as BigTIFF
+            ImageStack is = img.getStack();
+            TIFFStackWriter writer = safeOpenTIFFWriter(
+                    tiffOutFile,
+                    is.getWidth(),
+                    is.getHeight(),
+                    bitDepth,
+                    is.getSize(),
+                    TIFFStackWriter.Compression.NONE,
+                    1,
+                    docLogger);
+            try {
+                for(int z = 1; z <= is.getSize(); z++) {
+                    writer.writeSlice(is.getProcessor(z));
+                }
+            } finally {
+                writer.close();
+            }
         } else {
             File parentDir = tiffOutFile.getParentFile();
             if(parentDir != null) {
                 parentDir.mkdirs();
             }
-            TiffEncoder te = new TiffEncoder(img.getFileInfo());
+            FileInfo fi = img.getFileInfo();
+            if(img.getStack().isVirtual()) {
+                // like the ImageJ FileSaver we have to tell the encoder where
+                // to pull virtual slices from
+                fi.virtualStack = (VirtualStack)img.getStack();
+            }
+            TiffEncoder te = new TiffEncoder(fi);
             FileOutputStream fos = new FileOutputStream(tiffOutFile);
             te.write(fos);
             fos.close();
         }
     }
     
+    /**
+     * Open a writer for streaming a TIFF stack to the given file. Like
+     * {@link #safeRenderAsTIFF(ImagePlus, File, DocumentLogger)} this refuses
+     * to overwrite an existing file. The file is written as BigTIFF if the
+     * stack is too big for a classic TIFF file
+     * @param tiffOutFile   the file to write
+     * @param width         the slice width
+     * @param height        the slice height
+     * @param bitDepth      8, 16 or 32 (floating point)
+     * @param sliceCount    the number of slices that will be written
+     * @param compression   the strip compression to use
+     * @param threadCount   the number of strips to compress concurrently.
+     *          Values less than one mean one per available processor
+     * @param docLogger     the logger that a refusal to overwrite is reported to
+     * @return  the writer or null if the file already exists
+     * @throws IOException if the file can't be created
+     */
+    public static TIFFStackWriter safeOpenTIFFWriter(
+            File tiffOutFile,
+            int width,
+            int height,
+            int bitDepth,
+            int sliceCount,
+            TIFFStackWriter.Compression compression,
+            int threadCount,
+            DocumentLogger docLogger) throws IOException {
+        if(tiffOutFile.exists()) {
+            docLogger.println(
+                    tiffOutFile.getAbsolutePath() +
+                    " already exists. Refusing to overwrite.");
+            return null;
+        } else {
+            File parentDir = tiffOutFile.getParentFile();
+            if(parentDir != null) {
+                parentDir.mkdirs();
+            }
+            boolean bigTIFF = TIFFStackWriter.needsBigTIFF(width, height, bitDepth, sliceCount);
+            if(bigTIFF) {
+                docLogger.println(
+                        "writing " + tiffOutFile.getAbsolutePath() +
+                        " as BigTIFF since it will be larger than 4 GB");
+            }
+            return new TIFFStackWriter(
+                    tiffOutFile,
+                    width,
+                    height,
+                    bitDepth,
+                    bigTIFF,
+                    compression,
+                    threadCount);
+        }
+    }
+    
     public static String removeExtension(String fileName) {
         int lastDot = fileName.lastIndexOf('.');
         if(lastDot == -1) {
@@ -87,37 +170,9 @@ public class Utilities {
         }
     }
     
-    public static ImagePlus zProjectMean(ArrayList<ImageProcessor> ips, int sizeX, int sizeY) {
-        float[][] floatVals = new float[sizeX][sizeY];
-        int[][] sumCounts = new int[sizeX][sizeY];
-        int sizeZ = ips.size();
-
-        // sum all then divide
-        for(int z = 0; z < sizeZ; z++) {
-            ImageProcessor currIP = ips.get(z);
-            for(int x = 0; x < sizeX; x++) {
-                for(int y = 0; y < sizeY; y++) {
-                    float currVal = currIP.getf(x, y);
-                    if(currVal != 0.0f) {
-                        floatVals[x][y] += currVal;
-                        sumCounts[x][y]++;
-                    }
-                }
-            }
-        }
-        for(int x = 0; x < sizeX; x++) {
-            for(int y = 0; y < sizeY; y++) {
-                floatVals[x][y] /= sumCounts[x][y];
-            }
-        }
-        FloatProcessor projIP = new FloatProcessor(floatVals);
-
-        return new ImagePlus("", projIP);
-    }
-    
     public static ImagePlus projectBrightestInterval(int windowSizePx, ImagePlus img) {
         int index = maxIntensityIndex(windowSizePx, img);
-        ImagePlus enFaceImg = Utilities.toEnFace(img, true);
+        ImagePlus enFaceImg = Utilities.toVirtualEnFace(img, true);
         int sizeX = enFaceImg.getWidth();
         int sizeY = enFaceImg.getHeight();
         
@@ -138,7 +193,27 @@ public class Utilities {
     }
     
     public static int maxIntensityIndex(int windowHightPx, ImagePlus img) {
-        float[] intenSums = widthIntensitySums(windowHightPx, img);
+        return maxIndex(widthIntensitySums(windowHightPx, img));
+    }
+    
+    /**
+     * Like {@link #maxIntensityIndex(int, ImagePlus)} for several window
+     * heights at once. The image is only read once
+     * @param windowHightsPx    the window heights
+     * @param img               the image to search
+     * @return  the index of the brightest window for each height
+     */
+    public static int[] maxIntensityIndices(int[] windowHightsPx, ImagePlus img) {
+        float[][] intenSums = widthIntensitySums(windowHightsPx, img);
+        int[] maxIndices = new int[intenSums.length];
+        for(int i = 0; i < intenSums.length; i++) {
+            maxIndices[i] = maxIndex(intenSums[i]);
+        }
+        
+        return maxIndices;
+    }
+    
+    private static int maxIndex(float[] intenSums) {
         float maxIntens = intenSums[0];
         int maxIndex = 0;
         
@@ -151,36 +226,83 @@ public class Utilities {
         
         return maxIndex;
     }
-
+    
+    /**
+     * Get the average intensity of every window of rows, where the average
+     * is taken over the whole width of every slice in the stack
+     * @param windowHightPx the window height
+     * @param img           the image
+     * @return  the window averages indexed by the window's first row
+     */
     public static float[] widthIntensitySums(int windowHightPx, ImagePlus img) {
-        // Z project the image to get the average of all stacks
-        ZProjector zProj = new ZProjector(img);
-        zProj.setMethod(ZProjector.AVG_METHOD);
-        zProj.setStartSlice(1);
-        zProj.setStopSlice(img.getImageStackSize());
-        zProj.doProjection();
-        float[][] maxProj = zProj.getProjection().getProcessor().getFloatArray();
+        return windowedAverages(windowHightPx, rowIntensityPrefixSums(img));
+    }
+    
+    /**
+     * Like {@link #widthIntensitySums(int, ImagePlus)} for several window
+     * heights at once. The image is only read once
+     * @param windowHightsPx    the window heights
+     * @param img               the image
+     * @return  the window averages for each height
+     */
+    public static float[][] widthIntensitySums(int[] windowHightsPx, ImagePlus img) {
+        double[] prefixSums = rowIntensityPrefixSums(img);
+        float[][] windowedAvgs = new float[windowHightsPx.length][];
+        for(int i = 0; i < windowHightsPx.length; i++) {
+            windowedAvgs[i] = windowedAverages(windowHightsPx[i], prefixSums);
+        }
+        
+        return windowedAvgs;
+    }
+    
+    /**
+     * Average each row over the width of every slice in a single pass over
+     * the stack and return the running sum of those averages
+     * @param img   the image
+     * @return  element y is the sum of the averages of the rows before y
+     */
+    private static double[] rowIntensityPrefixSums(ImagePlus img) {
+        ImageStack is = img.getImageStack();
+        int sizeX = is.getWidth();
+        int sizeY = is.getHeight();
+        int sizeZ = is.getSize();
         
-        int sizeX = img.getWidth();
-        int sizeY = img.getHeight();
+        double[] rowSums = new double[sizeY];
+        for(int z = 0; z < sizeZ; z++) {
+            ImageProcessor ip = is.getProcessor(z + 1);
+            Object pixels = ip.getPixels();
+            float[] floatPixels = pixels instanceof float[] ? (float[])pixels : null;
+            for(int y = 0, i = 0; y < sizeY; y++) {
+                double rowSum = 0.0;
+                for(int x = 0; x < sizeX; x++, i++) {
+                    rowSum += floatPixels == null ? ip.getf(i) : floatPixels[i];
+                }
+                rowSums[y] += rowSum;
+            }
+        }
         
-        // now get the avg of all of the image rows
-        float[] yAvgs = new float[sizeY];
+        double[] prefixSums = new double[sizeY + 1];
+        double rowCount = (double)sizeX * sizeZ;
         for(int y = 0; y < sizeY; y++) {
-            for(int x = 0; x < sizeX; x++) {
-                yAvgs[y] += maxProj[x][y];
-            }
-            yAvgs[y] /= sizeX;
+            prefixSums[y + 1] = prefixSums[y] + rowSums[y] / rowCount;
         }
         
-        // now we use a window
+        return prefixSums;
+    }
+    
+    /**
+     * Slide a window down the rows
+     * @param windowHightPx the window height
+     * @param prefixSums    the running sum of the row averages
+     * @return  the window averages indexed by the window's first row
+     */
+    private static float[] windowedAverages(int windowHightPx, double[] prefixSums) {
+        int sizeY = prefixSums.length - 1;
         float[] windowedAvgs = new float[1 + sizeY - windowHightPx];
-        
         for(int yStart = 0; yStart < windowedAvgs.length; yStart++) {
-            for(int y = yStart; y < yStart + windowHightPx; y++) {
-                windowedAvgs[yStart] += yAvgs[y];
-            }
-            windowedAvgs[yStart] /= windowHightPx;
+            windowedAvgs[yStart] = (float)(
+                    (prefixSums[yStart + windowHightPx] - prefixSums[yStart]) /
+                    windowHightPx);
         }
         
         return windowedAvgs;
@@ -193,38 +315,25 @@ public class Utilities {
      * @return the en face image
      */
     public static ImagePlus toEnFace(ImagePlus img, boolean invertImageStack) {
-
-        ImageStack is = img.getImageStack();
-        
-        int sizeX = is.getWidth();
-        int sizeY = is.getHeight();
-        int sizeZ = is.getSize();
-        
-        // read intens
-        float[][][] imgIntensZXY = new float[sizeZ][][];
-        for(int z = 0; z < sizeZ; z++) {
-            ImageProcessor imgProc = is.getProcessor(z + 1);
-            imgIntensZXY[z] = new float[sizeX][];
-            for(int x = 0; x < sizeX; x++) {
-                imgIntensZXY[z][x] = new float[sizeY];
-                for(int y = 0; y < sizeY; y++) {
-                    imgIntensZXY[z][x][y] = imgProc.getf(x, y);
-                }
-            }
-        }
-        
-        // do the rotation
-        int sizeMaxXZ = Math.max(sizeX, sizeZ);
-        ImageStack rotStack = new ImageStack(sizeMaxXZ, sizeMaxXZ);
-        if(invertImageStack) {
-            for(int y = 0; y < sizeY; y++) {
-                rotStack.addSlice("" + y, rotateSlice(y, imgIntensZXY, sizeX, sizeY, sizeZ));
-            }
-        } else {
-            for(int y = sizeY - 1; y >= 0; y--) {
-                rotStack.addSlice("" + y, rotateSlice(y, imgIntensZXY, sizeX, sizeY, sizeZ));
-            }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return toEnFace(img, invertImageStack, pool);
+        } finally {
+            pool.shutdown();
         }
+    }
+    
+    /**
+     * Rotate and scale the given stack in order to produce the "en face" view
+     * @param img the image to transform
+     * @param invertImageStack indicates if the image stack should be inverted
+     * @param pool the en face slices are computed in parallel on this pool
+     * @return the en face image
+     * @see EnFaceResampler
+     */
+    public static ImagePlus toEnFace(ImagePlus img, boolean invertImageStack, ForkJoinPool pool) {
+        EnFaceResampler resampler = new EnFaceResampler(img.getImageStack(), invertImageStack);
+        ImageStack rotStack = resampler.computeStack(pool);
         
         img = IJ.createImage(
                 "rotImg",
@@ -237,25 +346,16 @@ public class Utilities {
         return img;
     }
     
-    private static ImageProcessor rotateSlice(
-            int y,
-            float[][][] imgIntensZXY,
-            int sizeX, int sizeY, int sizeZ) {
-        
-        int sizeMaxXZ = Math.max(sizeX, sizeZ);
-        float[][] currSlice = new float[sizeX][sizeZ];
-        for(int x = 0; x < sizeX; x++) {
-            for(int z = 0; z < sizeZ; z++) {
-                currSlice[x][z] = imgIntensZXY[(sizeZ - z) - 1][x][y];
-            }
-        }
-        
-        // scale
-        ImageProcessor fp = new FloatProcessor(currSlice);
-        fp.setInterpolationMethod(ImageProcessor.BILINEAR);
-        fp = fp.resize(sizeMaxXZ, sizeMaxXZ, true);
-        
-        return fp;
+    /**
+     * Like {@link #toEnFace(ImagePlus, boolean)} except that the en face
+     * slices are only computed when they are used
+     * @param img the image to transform
+     * @param invertImageStack indicates if the image stack should be inverted
+     * @return the en face image which is backed by an {@link EnFaceStack}
+     */
+    public static ImagePlus toVirtualEnFace(ImagePlus img, boolean invertImageStack) {
+        EnFaceResampler resampler = new EnFaceResampler(img.getImageStack(), invertImageStack);
+        return new ImagePlus("rotImg", new EnFaceStack(resampler));
     }
     
     public static void writeObjectTo(Object o, File f) throws IOException {